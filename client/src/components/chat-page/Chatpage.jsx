@@ -11,32 +11,66 @@ export default function ChatPage({ username, chat }) {
   const [messages, setMessages] = useState([]);
   const [input, setInput] = useState("");
   const [connected, setConnected] = useState(false);
+  // Cursor for the next older page, null once the oldest message is loaded
+  const [olderCursor, setOlderCursor] = useState(null);
+  const [loadingOlder, setLoadingOlder] = useState(false);
   const clientRef = useRef(null);
   const chatBoxRef = useRef(null);
+  // Scroll height before older messages were prepended, so the view stays where it was
+  const prependedFromRef = useRef(null);
 
   const isGroup = chat?.isGroup === true;
   const chatTitle = isGroup ? chat.name : (chat.username || chat);
 
-  // Auto-scroll
+  // Auto-scroll, except when older messages were prepended above the view
   useEffect(() => {
-    chatBoxRef.current?.scrollTo(0, chatBoxRef.current.scrollHeight);
+    const box = chatBoxRef.current;
+    if (!box) return;
+    if (prependedFromRef.current !== null) {
+      box.scrollTop += box.scrollHeight - prependedFromRef.current;
+      prependedFromRef.current = null;
+    } else {
+      box.scrollTo(0, box.scrollHeight);
+    }
   }, [messages]);
 
-  // Load history
-  useEffect(() => {
+  // The newest page of history, or the page just older than a cursor; DM and group history
+  // both come back as cursor pages, oldest message first
+  const fetchHistory = (before) => {
     const token = localStorage.getItem("authToken");
     const url = isGroup
       ? `${API_URL}/api/group-messages/history?groupId=${chat.id}`
       : `${API_URL}/api/messages/history?friendUsername=${chat.username || chat}`;
 
-    fetch(url, {
+    return fetch(before ? `${url}&before=${before}` : url, {
       headers: { Authorization: "Bearer " + token },
-    })
-      .then((res) => res.json())
-      .then(setMessages)
+    }).then((res) => res.json());
+  };
+
+  // Load history
+  useEffect(() => {
+    setOlderCursor(null);
+    fetchHistory(null)
+      .then((page) => {
+        setMessages(page.messages);
+        setOlderCursor(page.hasMore ? page.nextCursor : null);
+      })
       .catch(console.error);
   }, [chat, username]);
 
+  const loadOlder = () => {
+    if (olderCursor === null || loadingOlder) return;
+    setLoadingOlder(true);
+    fetchHistory(olderCursor)
+      .then((page) => {
+        prependedFromRef.current = chatBoxRef.current?.scrollHeight ?? null;
+        setMessages((prev) => [...page.messages, ...prev]);
+        setOlderCursor(page.hasMore ? page.nextCursor : null);
+      })
+      .catch(console.error)
+      .finally(() => setLoadingOlder(false));
+  };
+
   // WebSocket connection
   useEffect(() => {
     const token = localStorage.getItem("authToken");
@@ -141,6 +175,11 @@ export default function ChatPage({ username, chat }) {
       </div>
 
       <div className="chat-box" ref={chatBoxRef}>
+        {olderCursor !== null && (
+          <button className="load-older" onClick={loadOlder} disabled={loadingOlder}>
+            {loadingOlder ? "Loading..." : "Load older messages"}
+          </button>
+        )}
         {messages.map((msg, idx) => {
           console.log("🧾 Rendering message:", msg)
           const isMe = msg.sender === username;
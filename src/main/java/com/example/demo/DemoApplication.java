@@ -12,7 +12,6 @@ public class DemoApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(DemoApplication.class, args);
-        System.out.println("🚀 Spring Boot Application Started Successfully! 🚀");
     }
 
     @Bean
@@ -0,0 +1,84 @@
+package com.example.demo.broker;
+
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.cache.GroupMembershipIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Keeps the in-memory friendship and group caches coherent across nodes in relay mode.
+ * A node that changes a relation publishes "nodeId:kind:id" to a broker topic; every other
+ * node drops its cached entry and reloads it from the database on next use.
+ */
+public class ClusterCacheBus implements MessageHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterCacheBus.class);
+
+    // Node-to-node traffic on the shared broker; JwtChannelInterceptor keeps clients off these topics
+    public static final String RESERVED_PREFIX = "/topic/cluster.";
+    public static final String DESTINATION = RESERVED_PREFIX + "cache";
+
+    private static final String FRIENDS = "friends";
+    private static final String GROUP = "group";
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final FriendshipCache friendshipCache;
+    private final GroupMembershipIndex groupMembershipIndex;
+
+    public ClusterCacheBus(SimpMessagingTemplate messagingTemplate, FriendshipCache friendshipCache,
+                           GroupMembershipIndex groupMembershipIndex) {
+        this.messagingTemplate = messagingTemplate;
+        this.friendshipCache = friendshipCache;
+        this.groupMembershipIndex = groupMembershipIndex;
+    }
+
+    public void friendsChanged(Long userId) {
+        publish(FRIENDS, userId);
+    }
+
+    public void groupChanged(Long groupId) {
+        publish(GROUP, groupId);
+    }
+
+    private void publish(String kind, Long id) {
+        try {
+            messagingTemplate.convertAndSend(DESTINATION, nodeId + ":" + kind + ":" + id);
+        } catch (Exception e) {
+            // Other nodes keep a stale entry until restart; the local cache is already correct
+            log.warn("Failed to publish cache invalidation {}:{}: {}", kind, id, e.getMessage());
+        }
+    }
+
+    // Invoked by the relay's system connection for every frame on DESTINATION
+    @Override
+    public void handleMessage(@NonNull Message<?> message) {
+        Object payload = message.getPayload();
+        String body = payload instanceof byte[] bytes
+                ? new String(bytes, StandardCharsets.UTF_8)
+                : String.valueOf(payload);
+
+        String[] parts = body.split(":");
+        if (parts.length != 3 || parts[0].equals(nodeId)) return;
+
+        Long id;
+        try {
+            id = Long.valueOf(parts[2]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        switch (parts[1]) {
+            case FRIENDS -> friendshipCache.invalidate(id);
+            case GROUP -> groupMembershipIndex.invalidate(id);
+            default -> { }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demo.broker;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process Artemis broker speaking STOMP, so relay mode can run on a single box
+ * or in tests without a separate broker. Non-persistent: chat frames are fire-and-forget
+ * and the database is the source of truth.
+ */
+public class EmbeddedStompBroker {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedStompBroker.class);
+
+    private final String host;
+    private final int port;
+
+    private EmbeddedActiveMQ server;
+
+    public EmbeddedStompBroker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @PostConstruct
+    public void start() throws Exception {
+        Configuration config = new ConfigurationImpl()
+                .setName("chat-embedded-broker")
+                .setPersistenceEnabled(false)
+                // Relay clients still send login/passcode; with security off any pair is accepted
+                .setSecurityEnabled(false)
+                .addAcceptorConfiguration("stomp", "tcp://" + host + ":" + port
+                        + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+
+        server = new EmbeddedActiveMQ();
+        server.setConfiguration(config);
+        server.start();
+        log.info("Embedded STOMP broker listening on {}:{}", host, port);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.demo.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Batches outbound STOMP MESSAGE frames per WebSocket session. Frames queued within
+ * the window, or until the byte budget is reached, go out as one WebSocket message
+ * (STOMP frames are NUL-terminated, so clients split them again). Every other frame
+ * first flushes what is pending, so frame order never changes.
+ *
+ * The coalescing session is wrapped in a ConcurrentWebSocketSessionDecorator with the
+ * send time and buffer limits, and flushes at the end of a window are queued through it
+ * like any other frame. A slow client therefore gets its frames buffered and is closed
+ * once it falls too far behind, rather than holding up a flush thread or its senders.
+ * This is the only layer that applies the limits: register() lifts them on the transport,
+ * so the decorator Spring puts around every session hands frames straight through to
+ * this one instead of buffering and timing them a second time.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.websocket.coalesce.enabled", havingValue = "true")
+public class FrameCoalescer implements WebSocketHandlerDecoratorFactory, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FrameCoalescer.class);
+
+    private final long windowMicros;
+    private final int maxBytes;
+    private final int sendTimeLimitMs;
+    private final int sendBufferSizeLimit;
+
+    // Times the windows and queues the flushes. A flush that finds a write in progress on the
+    // same session only queues, so a slow client holds at most one of these threads, until the
+    // send time limit gets it closed
+    private final ScheduledThreadPoolExecutor flusher;
+
+    public FrameCoalescer(@Value("${chat.websocket.coalesce.window-micros:2000}") long windowMicros,
+                          @Value("${chat.websocket.coalesce.max-bytes:16384}") int maxBytes,
+                          @Value("${chat.websocket.coalesce.flush-threads:0}") int flushThreads,
+                          @Value("${chat.websocket.send-time-limit-ms:10000}") int sendTimeLimitMs,
+                          @Value("${chat.websocket.send-buffer-size-limit:524288}") int sendBufferSizeLimit) {
+        this.windowMicros = windowMicros;
+        this.maxBytes = maxBytes;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+        int threads = flushThreads > 0 ? flushThreads : Runtime.getRuntime().availableProcessors();
+        this.flusher = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable task) {
+                Thread thread = new Thread(task, "ws-coalesce-flush-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Flushes that happen early cancel their timer; keep those out of the queue
+        this.flusher.setRemoveOnCancelPolicy(true);
+    }
+
+    // Replaces the transport's limits: this decorator enforces them around the real socket
+    public void register(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(Integer.MAX_VALUE);
+        registration.setSendBufferSizeLimit(Integer.MAX_VALUE);
+        registration.addDecoratorFactory(this);
+    }
+
+    @Override
+    @NonNull
+    public WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+                super.afterConnectionEstablished(new CoalescingSession(session).limited());
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdownNow();
+    }
+
+    // UTF-8 length without encoding, for the byte budget
+    static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // Queued by the window timer: tells the session to write what it is holding
+    private static final TextMessage FLUSH = new TextMessage("");
+
+    // Sits inside the session's ConcurrentWebSocketSessionDecorator, which calls it from one
+    // writing thread at a time and in queue order. Every write, the timer's included, goes
+    // through that queue, so the decorator's limits see all of them and no thread waits here
+    // for another one's write
+    private final class CoalescingSession extends WebSocketSessionDecorator {
+
+        // Guards the buffer against close and the timer's bookkeeping
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingBytes;
+        private ScheduledFuture<?> scheduledFlush;
+        private WebSocketSession limited;
+
+        CoalescingSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        WebSocketSession limited() {
+            limited = new ConcurrentWebSocketSessionDecorator(this, sendTimeLimitMs, sendBufferSizeLimit);
+            return limited;
+        }
+
+        @Override
+        public void sendMessage(@NonNull WebSocketMessage<?> message) throws IOException {
+            lock.lock();
+            try {
+                if (message == FLUSH) {
+                    flushLocked();
+                    return;
+                }
+                if (message instanceof TextMessage text && isMessageFrame(text.getPayload())) {
+                    pending.append(text.getPayload());
+                    pendingBytes += utf8Length(text.getPayload());
+                    if (pendingBytes >= maxBytes) {
+                        flushLocked();
+                    } else if (scheduledFlush == null) {
+                        scheduledFlush = flusher.schedule(this::requestFlush, windowMicros, TimeUnit.MICROSECONDS);
+                    }
+                    return;
+                }
+                flushLocked();
+                super.sendMessage(message);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close(@NonNull CloseStatus status) throws IOException {
+            lock.lock();
+            try {
+                flushLocked();
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Failed to flush frames to session {}: {}", getId(), e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+            super.close(status);
+        }
+
+        private void requestFlush() {
+            if (!isOpen()) return;
+            try {
+                limited.sendMessage(FLUSH);
+            } catch (SessionLimitExceededException e) {
+                // Normally the STOMP handler closes the session on this; nobody else sees it here
+                log.warn("Closing session {}: {}", getId(), e.getMessage());
+                closeQuietly(e.getStatus());
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Failed to flush frames to session {}: {}", getId(), e.getMessage());
+            }
+        }
+
+        private void closeQuietly(CloseStatus status) {
+            try {
+                getDelegate().close(status);
+            } catch (IOException e) {
+                log.debug("Failed to close session {}: {}", getId(), e.getMessage());
+            }
+        }
+
+        private void flushLocked() throws IOException {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (pending.isEmpty()) return;
+            String batch = pending.toString();
+            pending.setLength(0);
+            pendingBytes = 0;
+            if (isOpen()) {
+                super.sendMessage(new TextMessage(batch));
+            }
+        }
+
+        private static boolean isMessageFrame(String payload) {
+            return payload.startsWith("MESSAGE\n") || payload.startsWith("MESSAGE\r\n");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.demo.broker;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-session payload encoding for STOMP. A client picks "cbor" or "smile" with a
+ * payload-codec header on CONNECT; MESSAGE frames to that session are then transcoded
+ * from JSON and marked with the same header. SEND frames in either encoding are read by
+ * the converters from {@link #converters()} when they carry the matching content-type.
+ * Sessions that do not ask keep plain JSON.
+ */
+@Component
+public class PayloadCodecNegotiator implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadCodecNegotiator.class);
+
+    public static final String CODEC_HEADER = "payload-codec";
+
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+    public static final MimeType SMILE = new MimeType("application", "x-jackson-smile");
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final Map<String, Codec> codecs = Map.of(
+            "cbor", new Codec("cbor", new CBORFactory()),
+            "smile", new Codec("smile", new SmileFactory()));
+
+    private final ConcurrentHashMap<String, Codec> codecBySession = new ConcurrentHashMap<>();
+
+    // Content-type must be explicit, otherwise these would claim every convertAndSend
+    public List<MessageConverter> converters() {
+        return List.of(converter(CBOR, Jackson2ObjectMapperBuilder.cbor()),
+                converter(SMILE, Jackson2ObjectMapperBuilder.smile()));
+    }
+
+    private static MessageConverter converter(MimeType type, Jackson2ObjectMapperBuilder builder) {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(type);
+        converter.setObjectMapper(builder.build());
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (type == null || sessionId == null) return message;
+
+        switch (type) {
+            case CONNECT -> {
+                StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                String requested = accessor != null && accessor.getCommand() == StompCommand.CONNECT
+                        ? accessor.getFirstNativeHeader(CODEC_HEADER) : null;
+                Codec codec = requested != null ? codecs.get(requested.trim().toLowerCase()) : null;
+                if (codec != null) codecBySession.put(sessionId, codec);
+                return message;
+            }
+            case DISCONNECT -> {
+                codecBySession.remove(sessionId);
+                return message;
+            }
+            case MESSAGE -> {
+                Codec codec = codecBySession.get(sessionId);
+                return codec != null ? encode(message, codec) : message;
+            }
+            default -> {
+                return message;
+            }
+        }
+    }
+
+    private Message<?> encode(Message<?> message, Codec codec) {
+        if (!(message.getPayload() instanceof byte[] json) || json.length == 0) return message;
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        MimeType mimeType = contentType instanceof String value ? MimeTypeUtils.parseMimeType(value) : (MimeType) contentType;
+        if (mimeType != null && !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType)) return message;
+
+        byte[] encoded;
+        try {
+            encoded = codec.transcode(json);
+        } catch (IOException e) {
+            log.warn("Failed to encode payload as {}: {}", codec.name, e.getMessage());
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        // Octet-stream makes Spring write a binary WebSocket frame instead of a UTF-8 text frame
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(CODEC_HEADER, codec.name);
+        return MessageBuilder.createMessage(encoded, accessor.getMessageHeaders());
+    }
+
+    private static final class Codec {
+
+        private final String name;
+        private final JsonFactory factory;
+
+        // The broker hands every subscriber the same payload array, so a fan-out to
+        // many sessions with this codec transcodes once
+        private final AtomicReference<byte[][]> last = new AtomicReference<>(new byte[2][]);
+
+        Codec(String name, JsonFactory factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        byte[] transcode(byte[] json) throws IOException {
+            byte[][] cached = last.get();
+            if (cached[0] == json) return cached[1];
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+            try (JsonParser parser = JSON.createParser(json);
+                 JsonGenerator generator = factory.createGenerator(out)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+            byte[] encoded = out.toByteArray();
+            last.set(new byte[][] {json, encoded});
+            return encoded;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo.broker;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broker channel executor with one thread per registry shard. Published messages run on
+ * the shard that owns their destination, so deliveries to one destination stay in order
+ * while different shards dispatch in parallel. Subscribe, unsubscribe and disconnect
+ * frames are routed by session so each session's own frames are handled in order.
+ */
+public class ShardedDispatchExecutor implements Executor, DisposableBean {
+
+    private final ShardedSubscriptionRegistry registry;
+    private final ThreadPoolExecutor[] shards;
+
+    public ShardedDispatchExecutor(ShardedSubscriptionRegistry registry) {
+        this.registry = registry;
+        this.shards = new ThreadPoolExecutor[registry.getShardCount()];
+        for (int i = 0; i < shards.length; i++) {
+            String name = "broker-shard-" + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), task -> new Thread(task, name));
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        shards[shardFor(task)].execute(task);
+    }
+
+    // Tasks waiting across all shards
+    public int queuedTasks() {
+        int queued = 0;
+        for (ThreadPoolExecutor shard : shards) queued += shard.getQueue().size();
+        return queued;
+    }
+
+    private int shardFor(Runnable task) {
+        if (task instanceof MessageHandlingRunnable handling) {
+            Message<?> message = handling.getMessage();
+            SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+            String key = type == SimpMessageType.MESSAGE
+                    ? SimpMessageHeaderAccessor.getDestination(message.getHeaders())
+                    : SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            if (key != null) return registry.shardIndex(key);
+        }
+        return ThreadLocalRandom.current().nextInt(shards.length);
+    }
+
+    @Override
+    public void destroy() {
+        for (ThreadPoolExecutor shard : shards) shard.shutdown();
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.demo.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subscription registry for the simple broker, sharded by destination hash.
+ * Each destination keeps a concurrent session-to-subscriptions map with a
+ * read-only view built once, so findSubscriptions is a single map read with
+ * no locking or copying; subscribe and unsubscribe lock only their shard.
+ * Pattern destinations are kept apart and matched on every lookup, which is
+ * fine because this app only subscribes to exact destinations. Selector
+ * headers are not supported.
+ */
+public class ShardedSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> NO_SUBSCRIPTIONS =
+            CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    // sessionId -> subscriptionId -> destination, for unsubscribe and disconnect
+    private final Map<String, Map<String, String>> destinationsBySession = new ConcurrentHashMap<>();
+
+    private final Object patternLock = new Object();
+    private volatile List<PatternSubscription> patternSubscriptions = List.of();
+
+    public ShardedSubscriptionRegistry(int shardCount) {
+        int size = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) shards[i] = new Shard();
+        this.shardMask = size - 1;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardIndex(String destination) {
+        int h = destination.hashCode();
+        return (h ^ (h >>> 16)) & shardMask;
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId,
+                                           String destination, Message<?> message) {
+        // Recorded under the same lock as the subscription itself, so a concurrent remove of this
+        // destination sees both or neither
+        if (pathMatcher.isPattern(destination)) {
+            synchronized (patternLock) {
+                recordDestination(sessionId, subscriptionId, destination);
+                List<PatternSubscription> copy = new ArrayList<>(patternSubscriptions);
+                copy.add(new PatternSubscription(destination, sessionId, subscriptionId));
+                patternSubscriptions = List.copyOf(copy);
+            }
+            return;
+        }
+
+        Shard shard = shards[shardIndex(destination)];
+        synchronized (shard) {
+            recordDestination(sessionId, subscriptionId, destination);
+            shard.subscriptions.computeIfAbsent(destination, d -> new Destination())
+                    .sessions.merge(sessionId, List.of(subscriptionId), ShardedSubscriptionRegistry::append);
+        }
+    }
+
+    private void recordDestination(String sessionId, String subscriptionId, String destination) {
+        destinationsBySession.compute(sessionId, (id, subscriptions) -> {
+            Map<String, String> updated = subscriptions != null ? subscriptions : new ConcurrentHashMap<>();
+            updated.put(subscriptionId, destination);
+            return updated;
+        });
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        String[] removed = new String[1];
+        destinationsBySession.computeIfPresent(sessionId, (id, subscriptions) -> {
+            removed[0] = subscriptions.remove(subscriptionId);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+        if (removed[0] != null) remove(sessionId, subscriptionId, removed[0]);
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> sessionDestinations = destinationsBySession.remove(sessionId);
+        if (sessionDestinations == null) return;
+        sessionDestinations.forEach((subscriptionId, destination) -> remove(sessionId, subscriptionId, destination));
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        Destination subscribed = shards[shardIndex(destination)].subscriptions.get(destination);
+        MultiValueMap<String, String> exact = subscribed != null ? subscribed.view : null;
+        List<PatternSubscription> patterns = patternSubscriptions;
+        if (patterns.isEmpty()) {
+            return exact != null ? exact : NO_SUBSCRIPTIONS;
+        }
+
+        LinkedMultiValueMap<String, String> result = exact != null
+                ? new LinkedMultiValueMap<>(exact).deepCopy()
+                : new LinkedMultiValueMap<>();
+        for (PatternSubscription pattern : patterns) {
+            if (pathMatcher.match(pattern.destination, destination)) {
+                result.add(pattern.sessionId, pattern.subscriptionId);
+            }
+        }
+        return result;
+    }
+
+    private void remove(String sessionId, String subscriptionId, String destination) {
+        if (pathMatcher.isPattern(destination)) {
+            synchronized (patternLock) {
+                List<PatternSubscription> copy = new ArrayList<>(patternSubscriptions);
+                copy.removeIf(p -> p.sessionId.equals(sessionId) && p.subscriptionId.equals(subscriptionId));
+                patternSubscriptions = List.copyOf(copy);
+            }
+            return;
+        }
+
+        Shard shard = shards[shardIndex(destination)];
+        synchronized (shard) {
+            Destination subscribed = shard.subscriptions.get(destination);
+            if (subscribed == null) return;
+            subscribed.sessions.computeIfPresent(sessionId, (id, ids) -> without(ids, subscriptionId));
+            if (subscribed.sessions.isEmpty()) shard.subscriptions.remove(destination);
+        }
+    }
+
+    // A session's subscription ids for one destination are tiny immutable lists, replaced on change
+    private static List<String> append(List<String> ids, List<String> added) {
+        if (ids.containsAll(added)) return ids;
+        List<String> copy = new ArrayList<>(ids);
+        copy.addAll(added);
+        return List.copyOf(copy);
+    }
+
+    private static List<String> without(List<String> ids, String subscriptionId) {
+        List<String> copy = new ArrayList<>(ids);
+        copy.remove(subscriptionId);
+        return copy.isEmpty() ? null : List.copyOf(copy);
+    }
+
+    private static final class Shard {
+        private final Map<String, Destination> subscriptions = new ConcurrentHashMap<>();
+    }
+
+    private static final class Destination {
+        private final Map<String, List<String>> sessions = new ConcurrentHashMap<>();
+        // Live, weakly consistent view handed to the broker on every publish; the broker only
+        // iterates it and the id lists themselves are immutable
+        private final MultiValueMap<String, String> view = CollectionUtils.toMultiValueMap(sessions);
+    }
+
+    private record PatternSubscription(String destination, String sessionId, String subscriptionId) {
+    }
+}
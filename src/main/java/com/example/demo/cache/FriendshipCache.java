@@ -0,0 +1,86 @@
+package com.example.demo.cache;
+
+import com.example.demo.broker.ClusterCacheBus;
+import com.example.demo.entity.User;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory view of the user_friends relation for the DM send path.
+ * Each user's friend ids are loaded once, then kept current by UserService
+ * whenever a friendship is accepted or removed. PresenceRegistry drops a user's
+ * set when they go offline, and at most max-entries sets are held; the map starts
+ * over when full, as a dropped set is simply loaded again.
+ */
+@Component
+public class FriendshipCache {
+
+    private final UserIdCache userIdCache;
+    private final JdbcTemplate jdbcTemplate;
+    // Only present in relay mode, where other nodes hold their own copy of this cache
+    private final ObjectProvider<ClusterCacheBus> clusterCacheBus;
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<Long, LongHashSet> friendsById = new ConcurrentHashMap<>();
+
+    public FriendshipCache(UserIdCache userIdCache, JdbcTemplate jdbcTemplate,
+                           ObjectProvider<ClusterCacheBus> clusterCacheBus,
+                           @Value("${chat.user-cache.max-entries:100000}") int maxEntries) {
+        this.userIdCache = userIdCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterCacheBus = clusterCacheBus;
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean areFriends(String username, String otherUsername) {
+        Long userId = userIdCache.userId(username);
+        Long otherId = userIdCache.userId(otherUsername);
+        if (userId == null || otherId == null) return false;
+        return friendsOf(userId).contains(otherId);
+    }
+
+    // Loading under computeIfAbsent means a concurrent update waits for the load, then applies on top of it
+    public LongHashSet friendsOf(Long userId) {
+        LongHashSet friends = friendsById.get(userId);
+        if (friends != null) return friends;
+        if (friendsById.size() >= maxEntries) friendsById.clear();
+        return friendsById.computeIfAbsent(userId, this::loadFriends);
+    }
+
+    // Call after the change is committed; users that were never loaded pick it up from the DB later
+    public void friendshipAdded(User user, User friend) {
+        userIdCache.remember(user);
+        userIdCache.remember(friend);
+        friendsById.computeIfPresent(user.getId(), (id, friends) -> friends.with(friend.getId()));
+        friendsById.computeIfPresent(friend.getId(), (id, friends) -> friends.with(user.getId()));
+        publish(user, friend);
+    }
+
+    public void friendshipRemoved(User user, User friend) {
+        friendsById.computeIfPresent(user.getId(), (id, friends) -> friends.without(friend.getId()));
+        friendsById.computeIfPresent(friend.getId(), (id, friends) -> friends.without(user.getId()));
+        publish(user, friend);
+    }
+
+    public void invalidate(Long userId) {
+        friendsById.remove(userId);
+    }
+
+    private void publish(User user, User friend) {
+        clusterCacheBus.ifAvailable(bus -> {
+            bus.friendsChanged(user.getId());
+            bus.friendsChanged(friend.getId());
+        });
+    }
+
+    private LongHashSet loadFriends(Long userId) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT friend_id FROM user_friends WHERE user_id = ?", Long.class, userId);
+        return LongHashSet.of(ids.stream().mapToLong(Long::longValue).toArray());
+    }
+}
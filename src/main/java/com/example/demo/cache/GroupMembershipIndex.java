@@ -0,0 +1,107 @@
+package com.example.demo.cache;
+
+import com.example.demo.broker.ClusterCacheBus;
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.User;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Group id to member ids, so sending to or reading a group does not load
+ * ChatGroup.members. Groups are loaded on first use and kept current by GroupService.
+ */
+@Component
+public class GroupMembershipIndex {
+
+    private final UserIdCache userIdCache;
+    private final JdbcTemplate jdbcTemplate;
+    // Only present in relay mode, where other nodes hold their own copy of this index
+    private final ObjectProvider<ClusterCacheBus> clusterCacheBus;
+
+    private final ConcurrentHashMap<Long, LongHashSet> membersByGroup = new ConcurrentHashMap<>();
+
+    public GroupMembershipIndex(UserIdCache userIdCache, JdbcTemplate jdbcTemplate,
+                                ObjectProvider<ClusterCacheBus> clusterCacheBus) {
+        this.userIdCache = userIdCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterCacheBus = clusterCacheBus;
+    }
+
+    public boolean isMember(Long groupId, String username) {
+        if (groupId == null) return false;
+        Long userId = userIdCache.userId(username);
+        if (userId == null) return false;
+        LongHashSet members = members(groupId);
+        return members != null && members.contains(userId);
+    }
+
+    public boolean groupExists(Long groupId) {
+        return groupId != null && members(groupId) != null;
+    }
+
+    // Null when the group does not exist; that result is not cached
+    public LongHashSet members(Long groupId) {
+        return membersByGroup.computeIfAbsent(groupId, this::loadMembers);
+    }
+
+    // The update methods run after the surrounding transaction commits, so a concurrent
+    // load can never cache state that is about to be rolled back
+
+    public void groupSaved(ChatGroup group) {
+        long[] ids = group.getMembers().stream().mapToLong(User::getId).toArray();
+        group.getMembers().forEach(userIdCache::remember);
+        afterCommit(group.getId(), () -> membersByGroup.put(group.getId(), LongHashSet.of(ids)));
+    }
+
+    public void memberAdded(Long groupId, User user) {
+        userIdCache.remember(user);
+        afterCommit(groupId, () -> membersByGroup.computeIfPresent(groupId, (id, members) -> members.with(user.getId())));
+    }
+
+    public void memberRemoved(Long groupId, User user) {
+        afterCommit(groupId, () -> membersByGroup.computeIfPresent(groupId, (id, members) -> members.without(user.getId())));
+    }
+
+    public void groupDeleted(Long groupId) {
+        afterCommit(groupId, () -> membersByGroup.remove(groupId));
+    }
+
+    // Another node changed this group; reload from the database on next use
+    public void invalidate(Long groupId) {
+        membersByGroup.remove(groupId);
+    }
+
+    private LongHashSet loadMembers(Long groupId) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT user_id FROM group_members WHERE group_id = ?", Long.class, groupId);
+        if (ids.isEmpty()) {
+            Boolean exists = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM chat_groups WHERE id = ?)", Boolean.class, groupId);
+            if (!Boolean.TRUE.equals(exists)) return null;
+        }
+        return LongHashSet.of(ids.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private void afterCommit(Long groupId, Runnable update) {
+        Runnable applyAndPublish = () -> {
+            update.run();
+            clusterCacheBus.ifAvailable(bus -> bus.groupChanged(groupId));
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applyAndPublish.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                applyAndPublish.run();
+            }
+        });
+    }
+}
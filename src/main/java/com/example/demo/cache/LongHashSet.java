@@ -0,0 +1,110 @@
+package com.example.demo.cache;
+
+import java.util.Arrays;
+
+/**
+ * Immutable open-addressing set of primitive longs. Lookups never box or allocate;
+ * changes return a new copy, which suits data that is read on every message but
+ * changes only when a relation does.
+ */
+public final class LongHashSet {
+
+    public static final LongHashSet EMPTY = new LongHashSet(new long[2], false, 0);
+
+    private static final long FREE = 0L;
+
+    private final long[] slots;
+    private final boolean containsFree;
+    private final int size;
+
+    private LongHashSet(long[] slots, boolean containsFree, int size) {
+        this.slots = slots;
+        this.containsFree = containsFree;
+        this.size = size;
+    }
+
+    public static LongHashSet of(long... values) {
+        long[] slots = new long[capacityFor(values.length)];
+        boolean containsFree = false;
+        int size = 0;
+        for (long value : values) {
+            if (value == FREE) {
+                if (!containsFree) size++;
+                containsFree = true;
+            } else if (insert(slots, value)) {
+                size++;
+            }
+        }
+        return new LongHashSet(slots, containsFree, size);
+    }
+
+    public boolean contains(long value) {
+        if (value == FREE) return containsFree;
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (true) {
+            long slot = slots[index];
+            if (slot == FREE) return false;
+            if (slot == value) return true;
+            index = (index + 1) & mask;
+        }
+    }
+
+    public LongHashSet with(long value) {
+        if (contains(value)) return this;
+        long[] copy = Arrays.copyOf(toArray(), size + 1);
+        copy[size] = value;
+        return of(copy);
+    }
+
+    public LongHashSet without(long value) {
+        if (!contains(value)) return this;
+        long[] remaining = new long[size - 1];
+        int i = 0;
+        for (long element : toArray()) {
+            if (element != value) remaining[i++] = element;
+        }
+        return of(remaining);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] toArray() {
+        long[] values = new long[size];
+        int i = 0;
+        if (containsFree) values[i++] = FREE;
+        for (long slot : slots) {
+            if (slot != FREE) values[i++] = slot;
+        }
+        return values;
+    }
+
+    private static boolean insert(long[] slots, long value) {
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (slots[index] != FREE) {
+            if (slots[index] == value) return false;
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        return true;
+    }
+
+    // Keep the load factor at or below 0.5 so probe chains stay short
+    private static int capacityFor(int expected) {
+        int capacity = 2;
+        while (capacity < expected * 2) capacity <<= 1;
+        return capacity;
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo.cache;
+
+import com.example.demo.entity.User;
+import com.example.demo.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Username to user id lookups for the in-memory relation caches.
+ * Usernames never change, so a resolved id stays valid. A miss is remembered for
+ * miss-ttl-ms, so frames naming a user that does not exist cost one query per name
+ * rather than one each; registering on this node clears the miss at once. Both maps
+ * hold at most max-entries names and start over when full, since anything dropped
+ * can be looked up again.
+ */
+@Component
+public class UserIdCache {
+
+    private final UserRepository userRepository;
+    private final int maxEntries;
+    private final long missTtlNanos;
+    private final ConcurrentHashMap<String, Long> userIds = new ConcurrentHashMap<>();
+    // Username to the System.nanoTime() at which its miss expires
+    private final ConcurrentHashMap<String, Long> misses = new ConcurrentHashMap<>();
+
+    public UserIdCache(UserRepository userRepository,
+                       @Value("${chat.user-cache.max-entries:100000}") int maxEntries,
+                       @Value("${chat.user-cache.miss-ttl-ms:5000}") long missTtlMs) {
+        this.userRepository = userRepository;
+        this.maxEntries = maxEntries;
+        this.missTtlNanos = TimeUnit.MILLISECONDS.toNanos(missTtlMs);
+    }
+
+    // Returns null for unknown users
+    public Long userId(String username) {
+        if (username == null) return null;
+        Long id = userIds.get(username);
+        if (id != null) return id;
+
+        Long missExpiresAt = misses.get(username);
+        if (missExpiresAt != null) {
+            if (System.nanoTime() - missExpiresAt < 0) return null;
+            misses.remove(username, missExpiresAt);
+        }
+
+        id = userRepository.findIdByUsername(username).orElse(null);
+        if (id != null) {
+            put(userIds, username, id);
+        } else {
+            put(misses, username, System.nanoTime() + missTtlNanos);
+        }
+        return id;
+    }
+
+    public void remember(User user) {
+        if (user.getId() != null) remember(user.getId(), user.getUsername());
+    }
+
+    public void remember(long userId, String username) {
+        misses.remove(username);
+        put(userIds, username, userId);
+    }
+
+    // Start over rather than track recency on the hit path
+    private <V> void put(ConcurrentHashMap<String, V> map, String username, V value) {
+        if (map.size() >= maxEntries) map.clear();
+        map.put(username, value);
+    }
+}
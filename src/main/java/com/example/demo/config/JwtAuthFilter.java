@@ -1,12 +1,11 @@
 package com.example.demo.config;
 
-import com.example.demo.service.UserService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -18,15 +17,16 @@ import org.springframework.lang.NonNull;
 
 import java.io.IOException;
 import java.util.Collections;
-import org.springframework.context.annotation.Lazy;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
-    private final UserService userService;
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthFilter.class);
 
-    public JwtAuthFilter(@Lazy UserService userService) {
-        this.userService = userService;
+    private final JwtVerifier jwtVerifier;
+
+    public JwtAuthFilter(JwtVerifier jwtVerifier) {
+        this.jwtVerifier = jwtVerifier;
     }
 
     @Override
@@ -43,14 +43,8 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         final String token = header.substring(7);
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(userService.getSecretKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-
-            String username = claims.getSubject();
-            System.out.println("🔐 Authenticated user from token: " + username);
+            String username = jwtVerifier.verify(token);
+            log.debug("Authenticated {} from bearer token", username);
 
 
             UsernamePasswordAuthenticationToken authentication =
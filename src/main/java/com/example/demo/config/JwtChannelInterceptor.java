@@ -1,7 +1,9 @@
 package com.example.demo.config;
 
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
+import com.example.demo.broker.ClusterCacheBus;
+import io.jsonwebtoken.JwtException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -13,63 +15,90 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 import org.springframework.lang.NonNull;
 
-import com.example.demo.service.UserService;
-
 import java.util.List;
+import java.util.Map;
 
+// Authenticates a STOMP session once, at CONNECT, and keeps the principal and the token's
+// expiry in the session attributes; SEND frames then only compare that expiry with the clock
 @Component
 public class JwtChannelInterceptor implements ChannelInterceptor {
 
-    private final UserService userService;
+    private static final Logger log = LoggerFactory.getLogger(JwtChannelInterceptor.class);
+
+    private static final String SESSION_AUTH = "chat.sessionAuth";
+
+    private static final List<SimpleGrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
 
-    public JwtChannelInterceptor(UserService userService) {
-        this.userService = userService;
+    private final JwtVerifier jwtVerifier;
+
+    public JwtChannelInterceptor(JwtVerifier jwtVerifier) {
+        this.jwtVerifier = jwtVerifier;
     }
 
     @Override
-public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
-    StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
-
-    if (accessor == null) return message;
-
-    StompCommand command = accessor.getCommand();
-    if (command == null) return message;
-
-    if (command.equals(StompCommand.CONNECT) || command.equals(StompCommand.SEND)) {
-        List<String> authHeaders = accessor.getNativeHeader("Authorization");
-        if (authHeaders != null && !authHeaders.isEmpty()) {
-            String token = authHeaders.get(0).replace("Bearer ", "").trim();
-            try {
-                System.out.println("🔐 WebSocket token received: " + token);
-
-                Claims claims = Jwts.parserBuilder()
-                        .setSigningKey(userService.getSecretKey())
-                        .build()
-                        .parseClaimsJws(token)
-                        .getBody();
-
-                String username = claims.getSubject();
-                System.out.println("✅ Token validated for user: " + username);
-
-                UsernamePasswordAuthenticationToken authentication =
-                        new UsernamePasswordAuthenticationToken(
-                                username,
-                                null,
-                                List.of(new SimpleGrantedAuthority("ROLE_USER"))
-                        );
-
-                accessor.setUser(authentication);
-
-            } catch (Exception e) {
-                System.out.println("❌ Invalid token in WebSocket: " + e.getMessage());
-                throw new IllegalArgumentException("Invalid token");
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) return message;
+
+        StompCommand command = accessor.getCommand();
+        if ((command == StompCommand.SUBSCRIBE || command == StompCommand.SEND) && isReserved(accessor.getDestination())) {
+            // In relay mode these carry cache invalidations and the user registry between nodes
+            log.warn("Rejected STOMP {} to reserved destination {}", command, accessor.getDestination());
+            throw new IllegalArgumentException("Destination is reserved");
+        }
+        if (command == StompCommand.CONNECT) {
+            authenticate(accessor);
+        } else if (command == StompCommand.SEND) {
+            SessionAuth auth = sessionAuth(accessor);
+            if (auth == null) {
+                // Older clients sent the token on every SEND instead of at CONNECT
+                authenticate(accessor);
+            } else if (System.currentTimeMillis() >= auth.expiresAt()) {
+                throw new IllegalArgumentException("Token expired");
+            } else if (accessor.getUser() == null) {
+                accessor.setUser(auth.principal());
             }
-        } else {
-            System.out.println("⚠️ No Authorization header in STOMP CONNECT/SEND frame");
         }
+        return message;
     }
 
-    return message;
-}
+    private void authenticate(StompHeaderAccessor accessor) {
+        String header = accessor.getFirstNativeHeader("Authorization");
+        if (header == null) {
+            log.debug("No Authorization header in STOMP {} frame", accessor.getCommand());
+            return;
+        }
+
+        String token = header.startsWith("Bearer ") ? header.substring(7).trim() : header.trim();
+        JwtVerifier.VerifiedToken verified;
+        try {
+            verified = jwtVerifier.verifyToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.warn("Rejected STOMP {} frame with invalid token: {}", accessor.getCommand(), e.getMessage());
+            throw new IllegalArgumentException("Invalid token");
+        }
+        log.debug("Token validated for {}", verified.username());
+
+        UsernamePasswordAuthenticationToken principal =
+                new UsernamePasswordAuthenticationToken(verified.username(), null, AUTHORITIES);
+        // The user set here is remembered by the protocol handler for the rest of the session
+        accessor.setUser(principal);
 
-}
\ No newline at end of file
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes != null) {
+            attributes.put(SESSION_AUTH, new SessionAuth(principal, verified.expiresAt()));
+        }
+    }
+
+    private static boolean isReserved(String destination) {
+        return destination != null && destination.startsWith(ClusterCacheBus.RESERVED_PREFIX);
+    }
+
+    private static SessionAuth sessionAuth(StompHeaderAccessor accessor) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return attributes == null ? null : (SessionAuth) attributes.get(SESSION_AUTH);
+    }
+
+    private record SessionAuth(UsernamePasswordAuthenticationToken principal, long expiresAt) {
+    }
+}
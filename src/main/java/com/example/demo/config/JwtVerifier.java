@@ -0,0 +1,135 @@
+package com.example.demo.config;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing key, one shared parser, and a cache of tokens that already passed signature
+ * verification, used by both the REST filter and the STOMP interceptor. Entries are keyed
+ * by the SHA-256 of the token, so raw tokens are never held, and expire at the token's exp.
+ */
+@Component
+public class JwtVerifier {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final SecretKey secretKey;
+    private final JwtParser parser;
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<TokenDigest, VerifiedToken> verified = new ConcurrentHashMap<>();
+
+    // result=cached (served from the cache), verified (full signature check) or rejected
+    private final Timer cachedTimer;
+    private final Timer verifiedTimer;
+    private final Timer rejectedTimer;
+
+    public JwtVerifier(@Value("${jwt.secret}") String secret,
+                       @Value("${jwt.cache.max-entries:10000}") int maxEntries,
+                       MeterRegistry meterRegistry) {
+        this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SignatureAlgorithm.HS256.getJcaName());
+        // JwtParser is immutable and thread-safe once built
+        this.parser = Jwts.parserBuilder().setSigningKey(secretKey).build();
+        this.maxEntries = maxEntries;
+        this.cachedTimer = verifyTimer(meterRegistry, "cached");
+        this.verifiedTimer = verifyTimer(meterRegistry, "verified");
+        this.rejectedTimer = verifyTimer(meterRegistry, "rejected");
+    }
+
+    public SecretKey getSecretKey() {
+        return secretKey;
+    }
+
+    // Returns the token's subject; throws JwtException when the token is invalid or expired
+    public String verify(String token) {
+        return verifyToken(token).username();
+    }
+
+    public VerifiedToken verifyToken(String token) {
+        long start = System.nanoTime();
+        TokenDigest digest = TokenDigest.of(token);
+        long now = System.currentTimeMillis();
+
+        VerifiedToken cached = verified.get(digest);
+        if (cached != null) {
+            if (now < cached.expiresAt()) {
+                cachedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return cached;
+            }
+            verified.remove(digest, cached);
+        }
+
+        try {
+            VerifiedToken result = parse(token, digest, now);
+            verifiedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            rejectedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private VerifiedToken parse(String token, TokenDigest digest, long now) {
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        String username = claims.getSubject();
+        if (username == null) throw new JwtException("Token has no subject");
+
+        // Tokens without exp are still accepted but never cached
+        Date expiration = claims.getExpiration();
+        if (expiration == null) return new VerifiedToken(username, Long.MAX_VALUE);
+
+        VerifiedToken result = new VerifiedToken(username, expiration.getTime());
+        remember(digest, result, now);
+        return result;
+    }
+
+    private static Timer verifyTimer(MeterRegistry registry, String result) {
+        return Timer.builder("chat.jwt.verify")
+                .description("JWT verification for REST requests and STOMP CONNECT")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private void remember(TokenDigest digest, VerifiedToken token, long now) {
+        if (verified.size() >= maxEntries) {
+            verified.values().removeIf(t -> t.expiresAt() <= now);
+            // Still full of live tokens: start over rather than track recency on the hit path
+            if (verified.size() >= maxEntries) verified.clear();
+        }
+        verified.put(digest, token);
+    }
+
+    public record VerifiedToken(String username, long expiresAt) {
+    }
+
+    private record TokenDigest(long a, long b, long c, long d) {
+        static TokenDigest of(String token) {
+            MessageDigest sha = SHA_256.get();
+            ByteBuffer hash = ByteBuffer.wrap(sha.digest(token.getBytes(StandardCharsets.UTF_8)));
+            return new TokenDigest(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+        }
+    }
+}
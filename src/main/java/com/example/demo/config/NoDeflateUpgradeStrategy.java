@@ -0,0 +1,63 @@
+package com.example.demo.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+// Tomcat accepts permessage-deflate whenever a client offers it, from the raw request
+// header. With chat.websocket.deflate.enabled=false the offer is hidden from it instead.
+public class NoDeflateUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+    private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    @Override
+    protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                          ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+        super.upgradeHttpToWebSocket(new WithoutDeflateOffer(request), response, endpointConfig, pathParams);
+    }
+
+    private static final class WithoutDeflateOffer extends HttpServletRequestWrapper {
+
+        WithoutDeflateOffer(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (!EXTENSIONS_HEADER.equalsIgnoreCase(name)) return super.getHeader(name);
+            Enumeration<String> values = getHeaders(name);
+            return values.hasMoreElements() ? values.nextElement() : null;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (!EXTENSIONS_HEADER.equalsIgnoreCase(name) || values == null) return values;
+
+            List<String> kept = Collections.list(values).stream()
+                    .map(NoDeflateUpgradeStrategy::withoutDeflate)
+                    .filter(value -> !value.isEmpty())
+                    .toList();
+            return Collections.enumeration(kept);
+        }
+    }
+
+    // "permessage-deflate; client_max_window_bits, x-other" -> "x-other"
+    static String withoutDeflate(String header) {
+        StringBuilder kept = new StringBuilder();
+        for (String offer : header.split(",")) {
+            String name = offer.split(";", 2)[0].trim();
+            if (name.equalsIgnoreCase("permessage-deflate")) continue;
+            if (!kept.isEmpty()) kept.append(',');
+            kept.append(offer.trim());
+        }
+        return kept.toString();
+    }
+}
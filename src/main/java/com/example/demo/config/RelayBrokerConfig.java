@@ -0,0 +1,57 @@
+package com.example.demo.config;
+
+import com.example.demo.broker.ClusterCacheBus;
+import com.example.demo.broker.EmbeddedStompBroker;
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.cache.GroupMembershipIndex;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+
+import java.util.Map;
+
+// chat.broker.mode=relay: /topic frames go through an external STOMP broker shared by all
+// nodes, so each node only fans out to its own sessions and a DM reaches the receiver
+// whichever node they are connected to. State that lives in memory stays per node: presence
+// and typing only cover this node's sessions, and unread badges include only this node's
+// not yet flushed deltas, so a badge read on another node lags by up to one flush interval
+@Configuration
+@ConditionalOnProperty(name = "chat.broker.mode", havingValue = "relay")
+public class RelayBrokerConfig {
+
+    // Single-box deployments and tests: run the broker inside this JVM
+    @Bean
+    @ConditionalOnProperty(name = "chat.broker.relay.embedded", havingValue = "true")
+    public EmbeddedStompBroker embeddedStompBroker(@Value("${chat.broker.relay.host:localhost}") String host,
+                                                   @Value("${chat.broker.relay.port:61613}") int port) {
+        return new EmbeddedStompBroker(host, port);
+    }
+
+    @Bean
+    public ClusterCacheBus clusterCacheBus(@Lazy SimpMessagingTemplate messagingTemplate,
+                                           FriendshipCache friendshipCache,
+                                           GroupMembershipIndex groupMembershipIndex) {
+        return new ClusterCacheBus(messagingTemplate, friendshipCache, groupMembershipIndex);
+    }
+
+    // The relay's shared system connection subscribes once per node and hands frames to the bus
+    @Bean
+    public static BeanPostProcessor clusterCacheSubscriptionInstaller(ObjectProvider<ClusterCacheBus> bus) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof StompBrokerRelayMessageHandler handler) {
+                    handler.setSystemSubscriptions(Map.of(ClusterCacheBus.DESTINATION, bus.getObject()));
+                }
+                return bean;
+            }
+        };
+    }
+}
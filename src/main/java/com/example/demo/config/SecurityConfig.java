@@ -1,14 +1,19 @@
 package com.example.demo.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Map;
+
 import static org.springframework.security.config.Customizer.withDefaults;
 
 @Configuration
@@ -17,8 +22,15 @@ public class SecurityConfig {
 
     private final JwtAuthFilter jwtAuthFilter;
 
-    public SecurityConfig(JwtAuthFilter jwtAuthFilter) {
+    // The metrics scrape is only open when actuator is served on its own port, which listens on
+    // loopback by default; on the application port it needs a token like any other endpoint
+    private final boolean separateManagementPort;
+
+    public SecurityConfig(JwtAuthFilter jwtAuthFilter,
+                          @Value("${server.port:8080}") int serverPort,
+                          @Value("${management.server.port:-1}") int managementPort) {
         this.jwtAuthFilter = jwtAuthFilter;
+        this.separateManagementPort = managementPort > 0 && managementPort != serverPort;
     }
 
     @Bean
@@ -26,7 +38,12 @@ public class SecurityConfig {
         http
                 .csrf(csrf -> csrf.disable())
                 .cors(withDefaults())
-                .authorizeHttpRequests(auth -> auth
+                .authorizeHttpRequests(auth -> {
+                    if (separateManagementPort) {
+                        // Scraped by Prometheus; see management.* in application.properties
+                        auth.requestMatchers("/actuator/prometheus").permitAll();
+                    }
+                    auth
                         .requestMatchers(
                                 "/api/auth/register",
                                 "/api/auth/login",
@@ -34,6 +51,7 @@ public class SecurityConfig {
                                 "/error",
                                 "/chat.html",
                                 "/ws/**",
+                                "/actuator/health",
                                 "/css/**", "/js/**", "/images/**"
                         ).permitAll()
                         .requestMatchers(
@@ -44,15 +62,23 @@ public class SecurityConfig {
                                 "/api/friends/list",
                                 "/api/friends/pending"
                         ).authenticated()
-                        .anyRequest().authenticated()
-                )
+                        .anyRequest().authenticated();
+                })
                 .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
     }
 
+    // New hashes are written as {algorithm}hash; hashes stored before the prefix are plain BCrypt.
+    // upgradeEncoding() reports any hash made with another algorithm or a lower BCrypt strength
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${chat.password.algorithm:bcrypt}") String algorithm,
+                                           @Value("${chat.password.bcrypt-strength:10}") int bcryptStrength) {
+        Map<String, PasswordEncoder> encoders = Map.of(
+                "bcrypt", new BCryptPasswordEncoder(bcryptStrength),
+                "pbkdf2", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(algorithm, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(encoders.get("bcrypt"));
+        return encoder;
     }
 }
\ No newline at end of file
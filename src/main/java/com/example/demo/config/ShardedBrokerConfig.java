@@ -0,0 +1,42 @@
+package com.example.demo.config;
+
+import com.example.demo.broker.ShardedDispatchExecutor;
+import com.example.demo.broker.ShardedSubscriptionRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+
+// chat.broker.mode=sharded: the simple broker keeps its protocol handling but gets a
+// sharded subscription registry and one dispatch thread per shard
+@Configuration
+@ConditionalOnProperty(name = "chat.broker.mode", havingValue = "sharded")
+public class ShardedBrokerConfig {
+
+    @Bean
+    public ShardedSubscriptionRegistry shardedSubscriptionRegistry(@Value("${chat.broker.shards:0}") int shards) {
+        return new ShardedSubscriptionRegistry(shards > 0 ? shards : Runtime.getRuntime().availableProcessors());
+    }
+
+    @Bean
+    public ShardedDispatchExecutor shardedDispatchExecutor(ShardedSubscriptionRegistry registry) {
+        return new ShardedDispatchExecutor(registry);
+    }
+
+    @Bean
+    public static BeanPostProcessor shardedRegistryInstaller(ObjectProvider<ShardedSubscriptionRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) {
+                if (bean instanceof SimpleBrokerMessageHandler handler) {
+                    handler.setSubscriptionRegistry(registry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -1,35 +1,171 @@
 package com.example.demo.config;
 
+import com.example.demo.broker.ClusterCacheBus;
+import com.example.demo.broker.FrameCoalescer;
+import com.example.demo.broker.PayloadCodecNegotiator;
+import com.example.demo.broker.ShardedDispatchExecutor;
+import com.example.demo.logging.StompCorrelationInterceptor;
+import com.example.demo.presence.PresenceRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 import org.springframework.lang.NonNull;
 
+import java.util.List;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
 private JwtChannelInterceptor jwtChannelInterceptor;
 
+    @Autowired
+    private StompCorrelationInterceptor stompCorrelationInterceptor;
+
+    @Autowired
+    private PayloadCodecNegotiator payloadCodecNegotiator;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    // Only present with chat.broker.mode=sharded (see ShardedBrokerConfig)
+    @Autowired
+    private ObjectProvider<ShardedDispatchExecutor> shardedDispatchExecutor;
+
+    // Only present with chat.websocket.coalesce.enabled=true
+    @Autowired
+    private ObjectProvider<FrameCoalescer> frameCoalescer;
+
+    @Value("${chat.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${chat.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${chat.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${chat.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${chat.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    // Same switch Spring Boot uses for Tomcat's request threads; requires Java 21
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${chat.websocket.deflate.enabled:true}")
+    private boolean deflate;
+
+    // Applied by FrameCoalescer instead of the transport when coalescing is on
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    // Negotiated with clients so idle sessions still send frames the presence registry sees
+    @Value("${chat.broker.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    private ThreadPoolTaskScheduler heartbeatScheduler;
+
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        if ("relay".equals(brokerMode)) {
+            // Clustered: every node relays /topic to the shared broker (see RelayBrokerConfig)
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(heartbeatMs)
+                    .setSystemHeartbeatReceiveInterval(heartbeatMs)
+                    // A user may be connected to another node: resolve /user destinations cluster-wide
+                    .setUserDestinationBroadcast(ClusterCacheBus.RESERVED_PREFIX + "unresolved-user")
+                    .setUserRegistryBroadcast(ClusterCacheBus.RESERVED_PREFIX + "user-registry");
+        } else {
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                    .setTaskScheduler(heartbeatScheduler());
+            shardedDispatchExecutor.ifAvailable(executor -> config.configureBrokerChannel().executor(executor));
+        }
         config.setApplicationDestinationPrefixes("/app");
+        // One virtual thread per frame would otherwise let a session's frames overtake each other
+        config.setPreservePublishOrder(virtualThreads);
     }
 
     @Override
 public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
-    registration.interceptors(jwtChannelInterceptor);
+    // Correlation first, so the other interceptors' log lines carry the session id
+    registration.interceptors(stompCorrelationInterceptor, jwtChannelInterceptor, payloadCodecNegotiator, presenceRegistry);
+    // Handlers block on JPA, so give each frame its own virtual thread instead of a slot in a small pool
+    if (virtualThreads) {
+        registration.executor(new VirtualThreadTaskExecutor("ws-inbound-"));
+    }
 }
+
+    @Override
+    public void configureClientOutboundChannel(@NonNull ChannelRegistration registration) {
+        registration.interceptors(payloadCodecNegotiator);
+        if (virtualThreads) {
+            registration.executor(new VirtualThreadTaskExecutor("ws-outbound-"));
+        }
+    }
+
+    // CBOR and Smile readers for SEND frames that declare them; JSON stays the default
+    @Override
+    public boolean configureMessageConverters(@NonNull List<MessageConverter> messageConverters) {
+        messageConverters.addAll(payloadCodecNegotiator.converters());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs);
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit);
+        frameCoalescer.ifAvailable(coalescer -> coalescer.register(registration));
+    }
+
     @Override
 public void registerStompEndpoints(@NonNull StompEndpointRegistry registry) {
     registry.addEndpoint("/ws") // ✅ Native WebSocket only
+            .setHandshakeHandler(deflate ? new DefaultHandshakeHandler() : new DefaultHandshakeHandler(new NoDeflateUpgradeStrategy()))
             .setAllowedOriginPatterns("*");
+    registry.setPreserveReceiveOrder(virtualThreads);
 }
 
+    // Deliberately not a bean: when the context holds exactly one AsyncTaskExecutor, Spring Boot
+    // runs both client channels on it, which made this single heartbeat thread handle every frame
+    private ThreadPoolTaskScheduler heartbeatScheduler() {
+        if (heartbeatScheduler == null) {
+            heartbeatScheduler = new ThreadPoolTaskScheduler();
+            heartbeatScheduler.setPoolSize(1);
+            heartbeatScheduler.setThreadNamePrefix("ws-heartbeat-");
+            heartbeatScheduler.initialize();
+        }
+        return heartbeatScheduler;
+    }
+
+    @PreDestroy
+    public void stopHeartbeats() {
+        if (heartbeatScheduler != null) heartbeatScheduler.shutdown();
+    }
+
     
 }
\ No newline at end of file
@@ -3,12 +3,15 @@ package com.example.demo.controller;
 import com.example.demo.dto.LoginRequest;
 import com.example.demo.dto.LoginResponse;
 import com.example.demo.dto.RegisterRequest;
-import com.example.demo.entity.User;
+import com.example.demo.service.PasswordHashingRejectedException;
 import com.example.demo.service.UserService;
 import jakarta.validation.Valid;
 import java.util.Map; // ✅ Add this import
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,27 +23,38 @@ public class AuthController {
     @Autowired
     private UserService userService;
 
+    // Both return once the hash is computed on the PasswordHasher pool, so the request thread is
+    // released meanwhile; a full hashing queue is answered at once with 429
     @PostMapping("/register")
-    public ResponseEntity<?> registerUser(@Valid @RequestBody RegisterRequest registerRequest) {
-        try {
-            System.out.println("📝 Registering user: " + registerRequest.getUsername());
-            User registeredUser = userService.registerUser(registerRequest);
-            System.out.println("✅ User registered: " + registeredUser.getUsername());
-            return ResponseEntity.ok(registeredUser);
-        } catch (RuntimeException e) {
-            System.out.println("❌ Registration failed: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<?>> registerUser(@Valid @RequestBody RegisterRequest registerRequest) {
+        return userService.registerUser(registerRequest)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof PasswordHashingRejectedException) return tooManyRequests(cause);
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(cause.getMessage());
+                });
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@Valid @RequestBody LoginRequest loginRequest) {
-        try {
-            LoginResponse loginResponse = userService.loginUser(loginRequest);
-            return ResponseEntity.ok(loginResponse);
-        } catch (RuntimeException e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(Map.of("error", e.getMessage())); // ✅ Send a proper JSON object
-        }
+    public CompletableFuture<ResponseEntity<?>> loginUser(@Valid @RequestBody LoginRequest loginRequest) {
+        return userService.loginUser(loginRequest)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof PasswordHashingRejectedException) return tooManyRequests(cause);
+                    return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                            .body(Map.of("error", cause.getMessage())); // ✅ Send a proper JSON object
+                });
     }
-}
\ No newline at end of file
+
+    private static ResponseEntity<?> tooManyRequests(Throwable cause) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", cause.getMessage()));
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
@@ -101,8 +101,12 @@ public class GroupController {
     }
 
     @GetMapping("/history/{groupId}")
-    public ResponseEntity<?> getGroupMessageHistory(@PathVariable Long groupId, Principal principal) {
-        return ResponseEntity.ok(groupService.getGroupMessageHistory(groupId, principal.getName()));
+    public ResponseEntity<?> getGroupMessageHistory(@PathVariable Long groupId,
+                                                    @RequestParam(required = false) Long before,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    Principal principal) {
+        return ResponseEntity.ok(groupService.getGroupMessageHistory(groupId, principal.getName(), before, after, limit));
     }
 
 }
@@ -1,43 +1,63 @@
 package com.example.demo.controller;
 
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.dto.CursorPage;
 import com.example.demo.dto.GroupMessageDTO;
-import com.example.demo.entity.ChatGroup;
 import com.example.demo.entity.GroupMessage;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.persistence.MessageWritePipeline;
 import com.example.demo.repository.ChatGroupRepository;
-import com.example.demo.repository.GroupMessageRepository;
+import com.example.demo.service.GroupMessagePublisher;
+import com.example.demo.service.GroupService;
+import com.example.demo.service.MessageSearchService;
+import com.example.demo.service.UnreadCounterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*; 
 
 import java.security.Principal;
 import java.time.LocalDateTime;
-import java.util.List;
 
 @RestController 
 @RequestMapping("/api/group-messages")
 public class GroupMessageController {
 
+    private static final Logger log = LoggerFactory.getLogger(GroupMessageController.class);
+
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private GroupMessagePublisher groupMessagePublisher;
 
     @Autowired
     private ChatGroupRepository chatGroupRepository;
 
     @Autowired
-    private GroupMessageRepository groupMessageRepository;
+    private GroupService groupService;
 
-    @MessageMapping("/group")
-    public void sendGroupMessage(@Payload GroupMessageDTO dto, Principal principal) {
-        ChatGroup group = chatGroupRepository.findById(dto.getGroupId())
-                .orElseThrow(() -> new RuntimeException("Group not found"));
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @Autowired
+    private MessageWritePipeline messageWritePipeline;
+
+    @Autowired
+    private UnreadCounterService unreadCounterService;
+
+    @Autowired
+    private MessageSearchService messageSearchService;
 
-        boolean isMember = group.getMembers().stream()
-                .anyMatch(u -> u.getUsername().equals(principal.getName()));
+    @Autowired
+    private ChatMetrics chatMetrics;
 
-        if (!isMember) {
-            System.out.println("❌ Not a member of this group.");
+    @MessageMapping("/group")
+    public void sendGroupMessage(@Payload GroupMessageDTO dto, Principal principal) {
+        long start = System.nanoTime();
+        if (!groupMembershipIndex.isMember(dto.getGroupId(), principal.getName())) {
+            log.debug("Group message from {} rejected, not a member of group {}", principal.getName(), dto.getGroupId());
+            chatMetrics.groupSend(ChatMetrics.Outcome.REJECTED, start);
             return;
         }
 
@@ -45,29 +65,56 @@ public class GroupMessageController {
         message.setSender(principal.getName());
         message.setContent(dto.getContent());
         message.setTimestamp(LocalDateTime.now());
-        message.setGroup(group);
-
-        groupMessageRepository.save(message);
+        // Membership already proved the group exists, so a reference is enough for the FK
+        message.setGroup(chatGroupRepository.getReferenceById(dto.getGroupId()));
+
+        try {
+            messageWritePipeline.write(message);
+        } catch (RuntimeException e) {
+            log.warn("Group message from {} to group {} not sent: {}", principal.getName(), dto.getGroupId(), e.getMessage());
+            chatMetrics.groupSend(ChatMetrics.Outcome.FAILED, start);
+            return;
+        }
+        unreadCounterService.groupMessageSent(message);
 
-        messagingTemplate.convertAndSend("/topic/group/" + dto.getGroupId(), message);
-        System.out.println("✅ Group message sent: " + message.getContent());
+        groupMessagePublisher.publish(message);
+        chatMetrics.groupSend(ChatMetrics.Outcome.SENT, start);
+        log.debug("Group message {} sent to group {}", message.getId(), dto.getGroupId());
 
     }
 
-    // ✅ REST endpoint to load group message history
+    // ✅ REST endpoint for group history, paged by message id cursor like direct message history
     @GetMapping("/history")
-    public List<GroupMessage> getGroupChatHistory(@RequestParam Long groupId, Principal principal) {
-        ChatGroup group = chatGroupRepository.findById(groupId)
-                .orElseThrow(() -> new RuntimeException("Group not found"));
-
-        boolean isMember = group.getMembers().stream()
-                .anyMatch(u -> u.getUsername().equals(principal.getName()));
-
-        if (!isMember) {
-            throw new RuntimeException("You are not a member of this group");
+    public ResponseEntity<?> getGroupChatHistory(@RequestParam Long groupId,
+                                                 @RequestParam(required = false) Long before,
+                                                 @RequestParam(required = false) Long after,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 Principal principal) {
+        long start = System.nanoTime();
+        try {
+            CursorPage<GroupMessage> page = groupService.getGroupMessageHistory(
+                    groupId, principal.getName(), before, after, limit);
+            chatMetrics.groupHistory(true, start);
+            return ResponseEntity.ok(page);
+        } catch (RuntimeException e) {
+            chatMetrics.groupHistory(false, start);
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
+    }
 
-        return groupMessageRepository.findByGroupIdOrderByTimestampAsc(groupId);
+    // Full-text search over the caller's groups, or just groupId; pages go back with "before"
+    @GetMapping("/search")
+    public ResponseEntity<?> searchGroupMessages(@RequestParam String q,
+                                                 @RequestParam(required = false) Long groupId,
+                                                 @RequestParam(required = false) Long before,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 Principal principal) {
+        try {
+            return ResponseEntity.ok(messageSearchService.searchGroupMessages(
+                    principal.getName(), q, groupId, before, limit));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
     
 }
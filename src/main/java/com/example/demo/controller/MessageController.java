@@ -1,15 +1,21 @@
 package com.example.demo.controller;
 
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.dto.CursorPage;
 import com.example.demo.dto.MessageDTO;
 import com.example.demo.entity.Message;
-import com.example.demo.entity.User;
-import com.example.demo.repository.MessageRepository;
-import com.example.demo.repository.UserRepository;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.persistence.MessageWritePipeline;
+import com.example.demo.service.ConversationSummaryService;
+import com.example.demo.service.MessageSearchService;
+import com.example.demo.service.MessageService;
+import com.example.demo.service.UnreadCounterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*; // ← added
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.http.ResponseEntity;
 
@@ -17,100 +23,122 @@ import java.security.Principal;
 import java.time.LocalDateTime;
 import java.util.*;
 
-@Transactional
 @RestController // ← change from @Controller to @RestController
 @RequestMapping("/api/messages")
 public class MessageController {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageController.class);
+
     private final SimpMessagingTemplate messagingTemplate;
-    private final MessageRepository messageRepository;
-    private final UserRepository userRepository;
     private final JdbcTemplate jdbcTemplate;
-
+    private final MessageService messageService;
+    private final ConversationSummaryService conversationSummaryService;
+    private final FriendshipCache friendshipCache;
+    private final MessageWritePipeline messageWritePipeline;
+    private final UnreadCounterService unreadCounterService;
+    private final MessageSearchService messageSearchService;
+    private final ChatMetrics chatMetrics;
 
     public MessageController(SimpMessagingTemplate messagingTemplate,
-                             MessageRepository messageRepository,
-                             UserRepository userRepository,
-                             JdbcTemplate jdbcTemplate) {
+                             JdbcTemplate jdbcTemplate,
+                             MessageService messageService,
+                             ConversationSummaryService conversationSummaryService,
+                             FriendshipCache friendshipCache,
+                             MessageWritePipeline messageWritePipeline,
+                             UnreadCounterService unreadCounterService,
+                             MessageSearchService messageSearchService,
+                             ChatMetrics chatMetrics) {
         this.messagingTemplate = messagingTemplate;
-        this.messageRepository = messageRepository;
-        this.userRepository = userRepository;
         this.jdbcTemplate = jdbcTemplate;
+        this.messageService = messageService;
+        this.conversationSummaryService = conversationSummaryService;
+        this.friendshipCache = friendshipCache;
+        this.messageWritePipeline = messageWritePipeline;
+        this.unreadCounterService = unreadCounterService;
+        this.messageSearchService = messageSearchService;
+        this.chatMetrics = chatMetrics;
     }
 
     @MessageMapping("/chat")
     public void sendMessage(@Payload MessageDTO messageDTO, Principal principal) {
+        long start = System.nanoTime();
         if (principal == null) {
-            System.out.println("❌ No user principal in WebSocket session");
+            log.warn("Direct message rejected, no user principal on the STOMP session");
+            chatMetrics.directSend(ChatMetrics.Outcome.REJECTED, start);
             return;
         }
 
         String senderUsername = principal.getName();
-        User sender = userRepository.findByUsername(senderUsername).orElse(null);
-        User receiver = userRepository.findByUsername(messageDTO.getReceiver()).orElse(null);
-
-        if (sender == null || receiver == null) return;
-
-        boolean areFriends = sender.getFriends().stream()
-                .anyMatch(friend -> friend.getUsername().equals(receiver.getUsername()));
+        String receiverUsername = messageDTO.getReceiver();
 
-        if (!areFriends) return;
+        // Unknown users have no cached friends, so this also covers a missing sender or receiver
+        if (!friendshipCache.areFriends(senderUsername, receiverUsername)) {
+            chatMetrics.directSend(ChatMetrics.Outcome.REJECTED, start);
+            return;
+        }
 
         Message msg = new Message();
         msg.setSender(senderUsername);
-        msg.setReceiver(receiver.getUsername());
+        msg.setReceiver(receiverUsername);
         msg.setContent(messageDTO.getContent());
         msg.setTimestamp(LocalDateTime.now());
 
-        messageRepository.save(msg);
-        messagingTemplate.convertAndSend("/topic/messages/" + receiver.getUsername(), msg);
+        try {
+            messageWritePipeline.write(msg);
+        } catch (RuntimeException e) {
+            log.warn("Direct message from {} to {} not sent: {}", senderUsername, receiverUsername, e.getMessage());
+            chatMetrics.directSend(ChatMetrics.Outcome.FAILED, start);
+            return;
+        }
+        unreadCounterService.messageSent(msg);
+
+        messagingTemplate.convertAndSend("/topic/messages/" + receiverUsername, msg);
         messagingTemplate.convertAndSend("/topic/messages/" + senderUsername, msg);
+        chatMetrics.directSend(ChatMetrics.Outcome.SENT, start);
 
     }
 
-    // ✅ REST endpoint for chat history
+    // ✅ REST endpoint for chat history, paged by message id cursor (latest page when no cursor is given)
     @GetMapping("/history")
-    public List<Message> getChatHistory(@RequestParam String friendUsername, Principal principal) {
-        String currentUsername = principal.getName();
-        return messageRepository.findBySenderAndReceiverOrReceiverAndSenderOrderByTimestampAsc(
-                currentUsername, friendUsername,
-                currentUsername, friendUsername
-        );
+    public ResponseEntity<?> getChatHistory(@RequestParam String friendUsername,
+                                            @RequestParam(required = false) Long before,
+                                            @RequestParam(required = false) Long after,
+                                            @RequestParam(required = false) Integer limit,
+                                            Principal principal) {
+        long start = System.nanoTime();
+        try {
+            CursorPage<Message> page = messageService.getChatHistory(
+                    principal.getName(), friendUsername, before, after, limit);
+            chatMetrics.directHistory(true, start);
+            return ResponseEntity.ok(page);
+        } catch (RuntimeException e) {
+            chatMetrics.directHistory(false, start);
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Full-text search over the caller's DMs, or one conversation with friendUsername; paged like history
+    @GetMapping("/search")
+    public ResponseEntity<?> searchMessages(@RequestParam String q,
+                                            @RequestParam(required = false) String friendUsername,
+                                            @RequestParam(required = false) Long before,
+                                            @RequestParam(required = false) Integer limit,
+                                            Principal principal) {
+        try {
+            return ResponseEntity.ok(messageSearchService.searchMessages(
+                    principal.getName(), q, friendUsername, before, limit));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
-    // REST endpoint for recent chats
+    // REST endpoint for recent chats: one summary row per partner, newest first
     @GetMapping("/recent")
-    public ResponseEntity<?> getRecentChats(Principal principal) {
+    public ResponseEntity<?> getRecentChats(@RequestParam(required = false) Integer limit, Principal principal) {
         try {
-            String currentUsername = principal.getName();
-            List<Message> allMessages = messageRepository.findBySenderOrReceiverOrderByTimestampDesc(
-                    currentUsername, currentUsername);
-            
-            // Process the messages to get only the most recent one for each conversation
-            Map<String, Message> latestMessagesByContact = new HashMap<>();
-            
-            for (Message message : allMessages) {
-                String chatPartner;
-                if (message.getSender().equals(currentUsername)) {
-                    chatPartner = message.getReceiver();
-                } else {
-                    chatPartner = message.getSender();
-                }
-                
-                // Only keep the latest message for each contact
-                if (!latestMessagesByContact.containsKey(chatPartner) || 
-                    message.getTimestamp().isAfter(latestMessagesByContact.get(chatPartner).getTimestamp())) {
-                    latestMessagesByContact.put(chatPartner, message);
-                }
-            }
-            
-            // Convert the map values to a list and sort by timestamp
-            List<Message> result = new ArrayList<>(latestMessagesByContact.values());
-            result.sort((m1, m2) -> m2.getTimestamp().compareTo(m1.getTimestamp()));
-            
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(conversationSummaryService.getRecentChats(principal.getName(), limit));
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to fetch recent chats", e);
             return ResponseEntity.status(500).body("Error fetching recent chats: " + e.getMessage());
         }
     }
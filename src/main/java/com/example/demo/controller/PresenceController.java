@@ -0,0 +1,33 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.TypingRequest;
+import com.example.demo.presence.PresenceRegistry;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/presence")
+public class PresenceController {
+
+    private final PresenceRegistry presenceRegistry;
+
+    public PresenceController(PresenceRegistry presenceRegistry) {
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    // Snapshot on (re)connect; changes after that arrive on /user/queue/presence
+    @GetMapping("/friends")
+    public ResponseEntity<?> getOnlineFriends(Principal principal) {
+        return ResponseEntity.ok(presenceRegistry.onlineFriends(principal.getName()));
+    }
+
+    @MessageMapping("/typing")
+    public void typing(@Payload TypingRequest request, Principal principal) {
+        if (principal == null) return;
+        presenceRegistry.typing(principal.getName(), request);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.SyncRequest;
+import com.example.demo.service.SyncService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/sync")
+public class SyncController {
+
+    private final SyncService syncService;
+
+    public SyncController(SyncService syncService) {
+        this.syncService = syncService;
+    }
+
+    // Written on the request thread rather than as a StreamingResponseBody, so no async
+    // dispatch has to pass the security filters again once the body is committed
+    @PostMapping
+    public void sync(@RequestBody SyncRequest request, Principal principal, HttpServletResponse response)
+            throws IOException {
+        try {
+            syncService.validate(request);
+        } catch (RuntimeException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(e.getMessage());
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        syncService.writeSync(principal.getName(), request, response.getOutputStream());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.MarkReadRequest;
+import com.example.demo.service.UnreadCounterService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/unread")
+public class UnreadController {
+
+    private final UnreadCounterService unreadCounterService;
+
+    public UnreadController(UnreadCounterService unreadCounterService) {
+        this.unreadCounterService = unreadCounterService;
+    }
+
+    // Badge counts: every conversation with unread messages, in one response
+    @GetMapping
+    public ResponseEntity<?> getUnreadCounts(Principal principal) {
+        return ResponseEntity.ok(unreadCounterService.getUnreadCounts(principal.getName()));
+    }
+
+    @PostMapping("/read")
+    public ResponseEntity<?> markRead(@RequestBody MarkReadRequest request, Principal principal) {
+        try {
+            if (request.getRef() == null || request.getUpToId() == null) {
+                throw new RuntimeException("ref and upToId are required");
+            }
+            unreadCounterService.markRead(principal.getName(), request.getKind(), request.getRef(), request.getUpToId());
+            return ResponseEntity.ok("Marked as read");
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
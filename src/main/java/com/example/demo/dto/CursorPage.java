@@ -0,0 +1,18 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class CursorPage<T> {
+    // Items are always in ascending id order, oldest first
+    private List<T> messages;
+
+    // Pass back as "before" (older pages) or "after" (newer pages); null when there is nothing more
+    private Long nextCursor;
+
+    private boolean hasMore;
+}
@@ -0,0 +1,23 @@
+package com.example.demo.dto;
+
+import com.example.demo.entity.GroupMessage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+// What subscribers of /topic/group/{id} receive: ids and display fields only, never the group
+@Getter
+@AllArgsConstructor
+public class GroupMessageWireDTO {
+    private Long id;
+    private Long groupId;
+    private String sender;
+    private String content;
+    private LocalDateTime timestamp;
+
+    public static GroupMessageWireDTO from(GroupMessage message) {
+        return new GroupMessageWireDTO(message.getId(), message.getGroupId(), message.getSender(),
+                message.getContent(), message.getTimestamp());
+    }
+}
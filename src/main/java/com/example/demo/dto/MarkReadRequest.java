@@ -0,0 +1,15 @@
+package com.example.demo.dto;
+
+import lombok.Data;
+
+@Data
+public class MarkReadRequest {
+    // "dm" or "group"
+    private String kind;
+
+    // Partner username for "dm", group id for "group"
+    private String ref;
+
+    // Id of the newest message the client has shown
+    private Long upToId;
+}
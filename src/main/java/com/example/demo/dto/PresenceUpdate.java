@@ -0,0 +1,12 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Delivered to /user/queue/presence when a friend comes online or goes offline
+@Getter
+@AllArgsConstructor
+public class PresenceUpdate {
+    private String username;
+    private boolean online;
+}
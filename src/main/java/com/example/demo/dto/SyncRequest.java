@@ -0,0 +1,22 @@
+package com.example.demo.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class SyncRequest {
+    // Friend username -> id of the last DM the client has in that conversation
+    private Map<String, Long> conversations;
+
+    // Group id -> id of the last group message the client has
+    private Map<Long, Long> groups;
+
+    // Highest DM id the client has seen anywhere; conversations it does not list yet are
+    // included if they have newer messages, starting from here. Omit to skip discovery.
+    // When more were found than fit, the response carries nextSince to send next time.
+    private Long since;
+
+    // Messages per conversation or group in this response
+    private Integer limit;
+}
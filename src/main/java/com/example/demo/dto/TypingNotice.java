@@ -0,0 +1,12 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Delivered to /user/queue/typing; groupId is null for a DM
+@Getter
+@AllArgsConstructor
+public class TypingNotice {
+    private String from;
+    private Long groupId;
+}
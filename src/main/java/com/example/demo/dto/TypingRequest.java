@@ -0,0 +1,10 @@
+package com.example.demo.dto;
+
+import lombok.Data;
+
+// Sent to /app/typing; set either the friend's username or the group id
+@Data
+public class TypingRequest {
+    private String to;
+    private Long groupId;
+}
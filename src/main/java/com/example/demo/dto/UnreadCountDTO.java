@@ -0,0 +1,18 @@
+package com.example.demo.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class UnreadCountDTO {
+    // "dm" or "group"
+    private String kind;
+
+    // Partner username for "dm", group id for "group"
+    private String ref;
+
+    private long unread;
+
+    private long lastReadId;
+}
@@ -0,0 +1,42 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// One row per (owner, partner) holding the latest DM between them; every message updates two rows
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "conversation_summaries",
+        uniqueConstraints = @UniqueConstraint(name = "uk_conversation_summary_owner_partner",
+                columnNames = {"owner", "partner"}),
+        indexes = @Index(name = "idx_conversation_summary_owner_last_id", columnList = "owner, last_message_id"))
+public class ConversationSummary {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private String partner;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_sender")
+    private String lastSender;
+
+    @Column(name = "last_content")
+    private String lastContent;
+
+    @Column(name = "last_timestamp")
+    private LocalDateTime lastTimestamp;
+}
@@ -1,5 +1,6 @@
 package com.example.demo.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -11,6 +12,8 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @NoArgsConstructor
+// Indexes and the group foreign key are created by MessagePartitions: Hibernate's schema
+// update does not see them on the partitioned table and would try to create them on every start
 @Table(name = "group_messages")
 public class GroupMessage {
 
@@ -22,7 +25,14 @@ public class GroupMessage {
     private String content;
     private LocalDateTime timestamp;
 
-    @ManyToOne
-    @JoinColumn(name = "group_id")
+    // Only the id goes over the wire; serializing the group would drag in every member
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "group_id", foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private ChatGroup group;
+
+    // Reading the id off a lazy proxy does not initialize it
+    public Long getGroupId() {
+        return group != null ? group.getId() : null;
+    }
 }
@@ -1,11 +1,13 @@
 package com.example.demo.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
+// Indexes are created by MessagePartitions, see GroupMessage
 @Entity
 @Builder
 @NoArgsConstructor
@@ -20,11 +22,35 @@ public class Message {
     private String content;
     private LocalDateTime timestamp;
 
+    // Same value for both directions of a DM, so a conversation is one index range
+    @JsonIgnore
+    @Column(name = "conversation_key")
+    private String conversationKey;
+
+    public static String conversationKey(String userA, String userB) {
+        boolean ordered = userA.compareTo(userB) <= 0;
+        String first = ordered ? userA : userB;
+        String second = ordered ? userB : userA;
+        // Length prefix keeps the key unambiguous whatever characters the usernames contain
+        return first.length() + ":" + first + ":" + second;
+    }
+
+    @PrePersist
+    void assignConversationKey() {
+        if (conversationKey == null && sender != null && receiver != null) {
+            conversationKey = conversationKey(sender, receiver);
+        }
+    }
+
     // Getters and setters
     public Long getId() {
         return id;
     }
 
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getSender() {
         return sender;
     }
@@ -56,4 +82,12 @@ public class Message {
     public void setTimestamp(LocalDateTime timestamp) {
         this.timestamp = timestamp;
     }
+
+    public String getConversationKey() {
+        return conversationKey;
+    }
+
+    public void setConversationKey(String conversationKey) {
+        this.conversationKey = conversationKey;
+    }
 }
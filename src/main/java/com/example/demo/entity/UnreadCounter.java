@@ -0,0 +1,40 @@
+package com.example.demo.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Unread count and read pointer per user and conversation; kind is "dm" (ref = partner
+// username) or "group" (ref = group id). Written in batches by UnreadCounterService.
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "unread_counters",
+        uniqueConstraints = @UniqueConstraint(name = "uk_unread_counter_owner_kind_ref",
+                columnNames = {"owner_id", "kind", "ref"}))
+public class UnreadCounter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Column(nullable = false, length = 8)
+    private String kind;
+
+    @Column(nullable = false)
+    private String ref;
+
+    @Column(name = "unread_count", nullable = false)
+    private long unreadCount;
+
+    @Column(name = "last_message_id", nullable = false)
+    private long lastMessageId;
+
+    @Column(name = "last_read_id", nullable = false)
+    private long lastReadId;
+}
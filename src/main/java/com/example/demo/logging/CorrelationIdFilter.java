@@ -0,0 +1,55 @@
+package com.example.demo.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+// Runs before security so every line of a request, the JWT filter's included, carries its id.
+// A well-formed X-Request-Id from the client is kept so its logs line up with ours, but the
+// sampling decision is made on an id of our own, so a client cannot choose to be traced
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CorrelationIdFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Request-Id";
+
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final TraceSampler traceSampler;
+
+    public CorrelationIdFilter(TraceSampler traceSampler) {
+        this.traceSampler = traceSampler;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        String serverId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        String requestId = request.getHeader(HEADER);
+        if (requestId == null || !VALID_ID.matcher(requestId).matches()) {
+            requestId = serverId;
+        }
+        response.setHeader(HEADER, requestId);
+
+        MDC.put(CorrelationIds.REQUEST_ID, requestId);
+        if (traceSampler.sampled(serverId)) MDC.put(CorrelationIds.SAMPLED, "true");
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(CorrelationIds.REQUEST_ID);
+            MDC.remove(CorrelationIds.SAMPLED);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.demo.logging;
+
+// MDC keys; logging.pattern.correlation prints the ids, SampledTraceFilter reads SAMPLED
+public final class CorrelationIds {
+
+    public static final String REQUEST_ID = "requestId";
+    public static final String STOMP_SESSION = "stompSession";
+    public static final String SAMPLED = "traceSampled";
+
+    private CorrelationIds() {
+    }
+}
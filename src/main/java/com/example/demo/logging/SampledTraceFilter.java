@@ -0,0 +1,30 @@
+package com.example.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Logback turbo filter (see logback-spring.xml) that lets DEBUG lines from the application's
+ * own loggers through for sampled requests and sessions, whatever their configured level.
+ * Framework loggers are left alone, so a sampled request does not turn on Hibernate's SQL log.
+ */
+public class SampledTraceFilter extends TurboFilter {
+
+    private String loggerPrefix = "com.example.demo";
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level.levelInt < Level.DEBUG_INT || !logger.getName().startsWith(loggerPrefix)) {
+            return FilterReply.NEUTRAL;
+        }
+        return MDC.get(CorrelationIds.SAMPLED) != null ? FilterReply.ACCEPT : FilterReply.NEUTRAL;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.demo.logging;
+
+import org.slf4j.MDC;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Puts the STOMP session id in the MDC for an inbound frame, both on the WebSocket thread
+ * that sends it into the channel (where the other interceptors run) and on the channel
+ * thread that handles it. Registered first, so every interceptor's lines carry the id.
+ */
+@Component
+public class StompCorrelationInterceptor implements ExecutorChannelInterceptor {
+
+    private final TraceSampler traceSampler;
+
+    public StompCorrelationInterceptor(TraceSampler traceSampler) {
+        this.traceSampler = traceSampler;
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        bind(message);
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(@NonNull Message<?> message, @NonNull MessageChannel channel,
+                                    boolean sent, Exception ex) {
+        clear();
+    }
+
+    @Override
+    public Message<?> beforeHandle(@NonNull Message<?> message, @NonNull MessageChannel channel,
+                                   @NonNull MessageHandler handler) {
+        bind(message);
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(@NonNull Message<?> message, @NonNull MessageChannel channel,
+                                    @NonNull MessageHandler handler, Exception ex) {
+        clear();
+    }
+
+    private void bind(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) return;
+        MDC.put(CorrelationIds.STOMP_SESSION, sessionId);
+        if (traceSampler.sampled(sessionId)) MDC.put(CorrelationIds.SAMPLED, "true");
+    }
+
+    private static void clear() {
+        MDC.remove(CorrelationIds.STOMP_SESSION);
+        MDC.remove(CorrelationIds.SAMPLED);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demo.logging;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Picks which requests and STOMP sessions get their DEBUG lines written at any log level.
+ * The decision is a hash of an id the server generated (a request's own id, or the STOMP
+ * session id), so it is the same for every line of a request or session without any shared
+ * state, and a client cannot pick an id that gets it traced.
+ */
+@Component
+public class TraceSampler {
+
+    private final long threshold;
+
+    public TraceSampler(@Value("${chat.logging.trace-sample-rate:0.01}") double rate) {
+        double clamped = Math.max(0, Math.min(1, rate));
+        this.threshold = (long) (clamped * (1L << 32));
+    }
+
+    public boolean sampled(String correlationId) {
+        if (correlationId == null || threshold == 0) return false;
+        // Fibonacci hashing spreads similar ids; the top 32 bits are compared with the rate
+        long hash = (correlationId.hashCode() * 0x9E3779B97F4A7C15L) >>> 32;
+        return hash < threshold;
+    }
+}
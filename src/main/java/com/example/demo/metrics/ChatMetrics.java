@@ -0,0 +1,82 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for the message send handlers and the history endpoints, registered once so the
+ * hot paths only read the clock and record. Kind is "direct" or "group".
+ */
+@Component
+public class ChatMetrics {
+
+    public enum Outcome {
+        // Persisted and published
+        SENT,
+        // Not friends, or not a member of the group
+        REJECTED,
+        // The write pipeline refused or failed the message
+        FAILED
+    }
+
+    private final Timer[] directSends;
+    private final Timer[] groupSends;
+    private final Timer directHistory;
+    private final Timer directHistoryErrors;
+    private final Timer groupHistory;
+    private final Timer groupHistoryErrors;
+
+    public ChatMetrics(MeterRegistry registry) {
+        directSends = sendTimers(registry, "direct");
+        groupSends = sendTimers(registry, "group");
+        directHistory = historyTimer(registry, "direct", "ok");
+        directHistoryErrors = historyTimer(registry, "direct", "error");
+        groupHistory = historyTimer(registry, "group", "ok");
+        groupHistoryErrors = historyTimer(registry, "group", "error");
+    }
+
+    // startNanos is a System.nanoTime() taken when the handler was entered
+    public void directSend(Outcome outcome, long startNanos) {
+        record(directSends[outcome.ordinal()], startNanos);
+    }
+
+    public void groupSend(Outcome outcome, long startNanos) {
+        record(groupSends[outcome.ordinal()], startNanos);
+    }
+
+    public void directHistory(boolean ok, long startNanos) {
+        record(ok ? directHistory : directHistoryErrors, startNanos);
+    }
+
+    public void groupHistory(boolean ok, long startNanos) {
+        record(ok ? groupHistory : groupHistoryErrors, startNanos);
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer[] sendTimers(MeterRegistry registry, String kind) {
+        Outcome[] outcomes = Outcome.values();
+        Timer[] timers = new Timer[outcomes.length];
+        for (Outcome outcome : outcomes) {
+            timers[outcome.ordinal()] = Timer.builder("chat.messages.send")
+                    .description("STOMP send handling, from frame to publish")
+                    .tag("kind", kind)
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(registry);
+        }
+        return timers;
+    }
+
+    private static Timer historyTimer(MeterRegistry registry, String kind, String outcome) {
+        return Timer.builder("chat.history")
+                .description("History page reads")
+                .tag("kind", kind)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
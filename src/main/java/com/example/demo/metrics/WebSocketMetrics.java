@@ -0,0 +1,126 @@
+package com.example.demo.metrics;
+
+import com.example.demo.broker.ShardedDispatchExecutor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gauges for the STOMP side: open WebSocket sessions, live subscriptions by destination
+ * prefix, and tasks waiting on the inbound, outbound and broker channels. Only SUBSCRIBE
+ * names a destination, so each session's subscriptions are remembered until it unsubscribes
+ * or disconnects.
+ */
+@Component
+public class WebSocketMetrics {
+
+    private static final List<String> PREFIXES = List.of("/topic/messages/", "/topic/group/", "/user/queue/");
+    private static final String OTHER = "other";
+
+    private final Map<String, AtomicInteger> subscriptionCounts = new HashMap<>();
+    private final ConcurrentHashMap<String, Map<String, String>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    public WebSocketMetrics(MeterRegistry registry,
+                            WebSocketMessageBrokerStats brokerStats,
+                            @Qualifier("clientInboundChannelExecutor") Executor inboundExecutor,
+                            @Qualifier("clientOutboundChannelExecutor") Executor outboundExecutor,
+                            @Qualifier("brokerChannelExecutor") Executor brokerExecutor,
+                            ObjectProvider<ShardedDispatchExecutor> shardedDispatchExecutor) {
+        Gauge.builder("chat.websocket.sessions", brokerStats, stats ->
+                        stats.getWebSocketSessionStats() == null ? 0 : stats.getWebSocketSessionStats().getWebSocketSessions())
+                .description("Open WebSocket sessions")
+                .register(registry);
+
+        for (String prefix : PREFIXES) subscriptionCounts.put(prefix, new AtomicInteger());
+        subscriptionCounts.put(OTHER, new AtomicInteger());
+        subscriptionCounts.forEach((prefix, count) -> Gauge.builder("chat.websocket.subscriptions", count, AtomicInteger::get)
+                .description("Live STOMP subscriptions by destination prefix")
+                .tag("prefix", prefix)
+                .register(registry));
+
+        // Virtual thread executors have no queue, so those channels get no gauge
+        queueGauge(registry, "inbound", inboundExecutor);
+        queueGauge(registry, "outbound", outboundExecutor);
+        ShardedDispatchExecutor sharded = shardedDispatchExecutor.getIfAvailable();
+        if (sharded != null) {
+            Gauge.builder("chat.channel.queued", sharded, ShardedDispatchExecutor::queuedTasks)
+                    .description("Tasks waiting for a channel thread")
+                    .tag("channel", "broker")
+                    .register(registry);
+        } else {
+            queueGauge(registry, "broker", brokerExecutor);
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        String subscriptionId = headers.getSubscriptionId();
+        if (sessionId == null || subscriptionId == null) return;
+
+        String prefix = prefixOf(headers.getDestination());
+        subscriptionsBySession.compute(sessionId, (id, subscriptions) -> {
+            if (subscriptions == null) subscriptions = new HashMap<>();
+            String previous = subscriptions.put(subscriptionId, prefix);
+            if (previous != null) subscriptionCounts.get(previous).decrementAndGet();
+            subscriptionCounts.get(prefix).incrementAndGet();
+            return subscriptions;
+        });
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = headers.getSessionId();
+        if (sessionId == null) return;
+
+        subscriptionsBySession.computeIfPresent(sessionId, (id, subscriptions) -> {
+            String prefix = subscriptions.remove(headers.getSubscriptionId());
+            if (prefix != null) subscriptionCounts.get(prefix).decrementAndGet();
+            return subscriptions;
+        });
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        subscriptionsBySession.computeIfPresent(event.getSessionId(), (id, subscriptions) -> {
+            subscriptions.values().forEach(prefix -> subscriptionCounts.get(prefix).decrementAndGet());
+            return null;
+        });
+    }
+
+    private static String prefixOf(String destination) {
+        if (destination != null) {
+            for (String prefix : PREFIXES) {
+                if (destination.startsWith(prefix)) return prefix;
+            }
+        }
+        return OTHER;
+    }
+
+    private static void queueGauge(MeterRegistry registry, String channel, Executor executor) {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            Gauge.builder("chat.channel.queued", pool, ThreadPoolTaskExecutor::getQueueSize)
+                    .description("Tasks waiting for a channel thread")
+                    .tag("channel", channel)
+                    .register(registry);
+        }
+    }
+}
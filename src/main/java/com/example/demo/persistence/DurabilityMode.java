@@ -0,0 +1,12 @@
+package com.example.demo.persistence;
+
+public enum DurabilityMode {
+    // The sender is acknowledged (and the message broadcast) only once its batch is committed
+    FLUSH,
+    // The message is broadcast once it is queued, with an id fetched ahead; a failed flush loses it, and rows
+    // from different nodes commit out of id order
+    ENQUEUE,
+    // The message is broadcast once it is in the local journal; a replayer copies the journal to the database.
+    // Ids are allocated locally in send-time order (see LocalIdAllocator)
+    JOURNAL
+}
@@ -0,0 +1,112 @@
+package com.example.demo.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out ids for journaled messages without touching the database, so sending keeps
+ * working while the database is down. Each month's id range (see MessagePartitions) is
+ * split in two: the sequence counts up from the bottom half, and the top half is laid out
+ * time-major, as a tick (TICKS_PER_MS per millisecond since the month began) times
+ * MAX_NODES plus the node id. Ids from different nodes therefore interleave in the order
+ * they were handed out, give or take the nodes' clock skew, and history and cursors keep
+ * following send time across the cluster. A node handing out more than TICKS_PER_MS ids
+ * a millisecond runs its ticks ahead of the clock until its rate drops again.
+ *
+ * Ticks are reserved a block at a time and the reservation recorded in a file next to the
+ * journal before use, so a restart, or a clock stepping back, continues after the last
+ * reserved block instead of reusing ids. A node's ids are above every sequence id of the
+ * same month.
+ */
+class LocalIdAllocator implements AutoCloseable {
+
+    static final int MAX_NODES = 16;
+    static final long TICKS_PER_MS = 8;
+    private static final long LOCAL_RANGE = 1L << (MessagePartitions.MONTH_SHIFT - 1);
+    private static final long TICKS_PER_MONTH = LOCAL_RANGE / MAX_NODES;
+    // About a second of ticks at the clock's pace
+    private static final long RESERVE_BLOCK = 8192;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FileChannel reservation;
+    private final int nodeId;
+
+    private YearMonth month;
+    private long next;
+    private long reservedUntil;
+
+    LocalIdAllocator(Path file, int nodeId) {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalArgumentException("Journal node id must be between 0 and " + (MAX_NODES - 1));
+        }
+        this.nodeId = nodeId;
+        try {
+            reservation = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer value = ByteBuffer.allocate(2 * Long.BYTES);
+            if (reservation.read(value, 0) == value.capacity()) {
+                month = MessagePartitions.EPOCH.plusMonths(value.getLong(0));
+                reservedUntil = value.getLong(Long.BYTES);
+                // Whatever was left of the last block may have been used before the restart
+                next = reservedUntil;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open id reservation " + file, e);
+        }
+    }
+
+    long nextId() {
+        return nextId(ZonedDateTime.now());
+    }
+
+    long nextId(ZonedDateTime now) {
+        YearMonth current = YearMonth.from(now);
+        long clockTick = Duration.between(current.atDay(1).atStartOfDay(now.getZone()), now).toMillis() * TICKS_PER_MS;
+        lock.lock();
+        try {
+            if (month == null || current.isAfter(month)) {
+                month = current;
+                next = 0;
+                reservedUntil = 0;
+            }
+            // A clock that stepped back into an earlier month keeps counting in the newer one
+            if (current.equals(month)) next = Math.max(next, clockTick);
+            if (next >= reservedUntil) {
+                if (next >= TICKS_PER_MONTH) {
+                    throw new RuntimeException("Journal ids for " + month + " are exhausted on this node");
+                }
+                reserve(Math.min(next + RESERVE_BLOCK, TICKS_PER_MONTH));
+            }
+            return MessagePartitions.monthStart(month) + LOCAL_RANGE + next++ * MAX_NODES + nodeId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reserve(long until) {
+        try {
+            ByteBuffer value = ByteBuffer.allocate(2 * Long.BYTES)
+                    .putLong(0, MessagePartitions.EPOCH.until(month, ChronoUnit.MONTHS))
+                    .putLong(Long.BYTES, until);
+            reservation.write(value, 0);
+            reservation.force(false);
+            reservedUntil = until;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record journal id reservation", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reservation.close();
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Read side of archived partitions: one SegmentFile per exported partition under
+ * chat.archive.dir/{message,group_messages}. Archived ids are all lower than anything
+ * still in the database, so history reads the database first and continues here for
+ * older pages (or starts here for an "after" cursor below the archived range).
+ */
+@Component
+public class MessageArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageArchive.class);
+
+    public static final String MESSAGES = "message";
+    public static final String GROUP_MESSAGES = "group_messages";
+
+    @Value("${chat.archive.dir:data/archive}")
+    private String archiveDir;
+
+    // Newest first, per table; replaced whole, so a reader always sees a consistent list
+    private volatile List<SegmentFile> messageSegments = List.of();
+    private volatile List<SegmentFile> groupSegments = List.of();
+
+    @PostConstruct
+    void load() throws IOException {
+        for (String table : List.of(MESSAGES, GROUP_MESSAGES)) {
+            Path dir = directory(table);
+            if (!Files.isDirectory(dir)) continue;
+            List<SegmentFile> opened = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.filter(f -> f.toString().endsWith(".seg")).toList()) {
+                    opened.add(SegmentFile.open(file));
+                }
+            }
+            replace(table, opened);
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        for (SegmentFile segment : messageSegments) segment.close();
+        for (SegmentFile segment : groupSegments) segment.close();
+    }
+
+    // Ids below this bound live in the archive; 0 when nothing has been archived
+    public long archivedBelow(String table) {
+        List<SegmentFile> segments = segments(table);
+        return segments.isEmpty() ? 0 : segments.get(0).upperBound();
+    }
+
+    // Newest first, like the database side of a "before" page
+    public List<Message> conversationBefore(String conversationKey, long before, int limit) {
+        List<Message> result = new ArrayList<>();
+        for (SegmentFile.Row row : rowsBefore(MESSAGES, conversationKey, before, limit)) {
+            result.add(toMessage(row, conversationKey));
+        }
+        return result;
+    }
+
+    public List<Message> conversationAfter(String conversationKey, long after, int limit) {
+        List<Message> result = new ArrayList<>();
+        for (SegmentFile.Row row : rowsAfter(MESSAGES, conversationKey, after, limit)) {
+            result.add(toMessage(row, conversationKey));
+        }
+        return result;
+    }
+
+    public List<GroupMessage> groupBefore(Long groupId, long before, int limit) {
+        List<GroupMessage> result = new ArrayList<>();
+        for (SegmentFile.Row row : rowsBefore(GROUP_MESSAGES, String.valueOf(groupId), before, limit)) {
+            result.add(toGroupMessage(row, groupId));
+        }
+        return result;
+    }
+
+    public List<GroupMessage> groupAfter(Long groupId, long after, int limit) {
+        List<GroupMessage> result = new ArrayList<>();
+        for (SegmentFile.Row row : rowsAfter(GROUP_MESSAGES, String.valueOf(groupId), after, limit)) {
+            result.add(toGroupMessage(row, groupId));
+        }
+        return result;
+    }
+
+    SegmentFile.Writer writer(String table, String partition) throws IOException {
+        return new SegmentFile.Writer(segmentPath(table, partition));
+    }
+
+    // Called once the writer has moved the finished segment into place; replaces an earlier export of the partition
+    void register(String table, String partition) throws IOException {
+        Path path = segmentPath(table, partition);
+        SegmentFile opened = SegmentFile.open(path);
+        List<SegmentFile> segments = new ArrayList<>();
+        List<SegmentFile> replaced = new ArrayList<>();
+        for (SegmentFile segment : segments(table)) {
+            (segment.path().equals(path) ? replaced : segments).add(segment);
+        }
+        segments.add(opened);
+        replace(table, segments);
+        replaced.forEach(SegmentFile::close);
+    }
+
+    // Retention: drops every segment whose rows are all below the bound
+    void deleteBelow(String table, long bound) throws IOException {
+        List<SegmentFile> kept = new ArrayList<>();
+        List<SegmentFile> expired = new ArrayList<>();
+        for (SegmentFile segment : segments(table)) {
+            (segment.upperBound() > bound ? kept : expired).add(segment);
+        }
+        if (expired.isEmpty()) return;
+
+        replace(table, kept);
+        for (SegmentFile segment : expired) {
+            // Readers that picked it up before the replace keep their reference until they finish
+            segment.close();
+            Files.deleteIfExists(segment.path());
+            log.info("Retention removed archive segment {}", segment.path());
+        }
+    }
+
+    private List<SegmentFile.Row> rowsBefore(String table, String key, long before, int limit) {
+        List<SegmentFile.Row> result = new ArrayList<>();
+        for (SegmentFile segment : segments(table)) {
+            if (!segment.retain()) continue;
+            try {
+                List<SegmentFile.Block> blocks = segment.blocks(key);
+                for (int i = blocks.size() - 1; i >= 0 && result.size() < limit; i--) {
+                    SegmentFile.Block block = blocks.get(i);
+                    if (block.minId() >= before) continue;
+                    List<SegmentFile.Row> rows = segment.read(block);
+                    for (int r = rows.size() - 1; r >= 0 && result.size() < limit; r--) {
+                        if (rows.get(r).id() < before) result.add(rows.get(r));
+                    }
+                }
+            } finally {
+                segment.release();
+            }
+            if (result.size() >= limit) break;
+        }
+        return result;
+    }
+
+    private List<SegmentFile.Row> rowsAfter(String table, String key, long after, int limit) {
+        List<SegmentFile> oldestFirst = new ArrayList<>(segments(table));
+        Collections.reverse(oldestFirst);
+
+        List<SegmentFile.Row> result = new ArrayList<>();
+        for (SegmentFile segment : oldestFirst) {
+            if (segment.upperBound() <= after || !segment.retain()) continue;
+            try {
+                for (SegmentFile.Block block : segment.blocks(key)) {
+                    if (block.maxId() <= after) continue;
+                    for (SegmentFile.Row row : segment.read(block)) {
+                        if (row.id() > after) result.add(row);
+                        if (result.size() >= limit) return result;
+                    }
+                }
+            } finally {
+                segment.release();
+            }
+        }
+        return result;
+    }
+
+    private static Message toMessage(SegmentFile.Row row, String conversationKey) {
+        return Message.builder()
+                .id(row.id())
+                .sender(row.sender())
+                .receiver(row.receiver())
+                .content(row.content())
+                .timestamp(toLocalDateTime(row.timestampMillis()))
+                .conversationKey(conversationKey)
+                .build();
+    }
+
+    private static GroupMessage toGroupMessage(SegmentFile.Row row, Long groupId) {
+        // Only the id is read off the group, as for a lazy reference
+        ChatGroup group = new ChatGroup();
+        group.setId(groupId);
+        GroupMessage message = new GroupMessage();
+        message.setId(row.id());
+        message.setSender(row.sender());
+        message.setContent(row.content());
+        message.setTimestamp(toLocalDateTime(row.timestampMillis()));
+        message.setGroup(group);
+        return message;
+    }
+
+    private static LocalDateTime toLocalDateTime(Long millis) {
+        return millis == null ? null : new Timestamp(millis).toLocalDateTime();
+    }
+
+    private List<SegmentFile> segments(String table) {
+        return MESSAGES.equals(table) ? messageSegments : groupSegments;
+    }
+
+    private synchronized void replace(String table, List<SegmentFile> segments) {
+        List<SegmentFile> sorted = new ArrayList<>(segments);
+        sorted.sort(Comparator.comparingLong(SegmentFile::upperBound).reversed());
+        if (MESSAGES.equals(table)) {
+            messageSegments = List.copyOf(sorted);
+        } else {
+            groupSegments = List.copyOf(sorted);
+        }
+    }
+
+    private Path directory(String table) {
+        return Path.of(archiveDir, table);
+    }
+
+    private Path segmentPath(String table, String partition) {
+        return directory(table).resolve(partition + ".seg");
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of chat messages in fixed-size memory-mapped segment files.
+ * Positions are logical byte offsets across all segments; segment n covers
+ * [n * segmentSize, (n + 1) * segmentSize). Each record is
+ * [int payload length][int crc32][payload] and never spans two segments.
+ * Everything before the checkpoint is known to be in the database.
+ */
+public class MessageJournal implements AutoCloseable {
+
+    static final class Entry {
+        final Message message;
+        final GroupMessage groupMessage;
+        final long endPosition;
+
+        private Entry(Message message, GroupMessage groupMessage, long endPosition) {
+            this.message = message;
+            this.groupMessage = groupMessage;
+            this.endPosition = endPosition;
+        }
+    }
+
+    private static final byte DIRECT_MESSAGE = 1;
+    private static final byte GROUP_MESSAGE = 2;
+    private static final int HEADER_SIZE = 8;
+
+    // sun.misc.Unsafe.invokeCleaner, looked up reflectively so the build does not depend on jdk.unsupported
+    private static final Object UNSAFE;
+    private static final Method UNMAPPER;
+
+    static {
+        Object unsafe = null;
+        Method unmapper = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field instance = type.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unsafe = instance.get(null);
+            unmapper = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LoggerFactory.getLogger(MessageJournal.class)
+                    .warn("Journal segments will be unmapped by the garbage collector: {}", e.toString());
+        }
+        UNSAFE = unsafe;
+        UNMAPPER = unmapper;
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean forceOnAppend;
+    private final FileChannel checkpointChannel;
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    // Not a monitor: appends can fault pages in or force them to disk, which would pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile long writePosition;
+    private volatile long checkpoint;
+
+    public MessageJournal(Path directory, int segmentSize, boolean forceOnAppend) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        try {
+            Files.createDirectories(directory);
+            checkpointChannel = FileChannel.open(directory.resolve("checkpoint"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            checkpoint = readCheckpoint();
+            writePosition = recoverWritePosition();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open message journal in " + directory, e);
+        }
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    public long append(Message message) {
+        ByteBuffer payload = encode(DIRECT_MESSAGE, message.getId(), null, message.getTimestamp(),
+                message.getSender(), message.getReceiver(), message.getContent());
+        return append(payload);
+    }
+
+    public long append(GroupMessage message) {
+        ByteBuffer payload = encode(GROUP_MESSAGE, message.getId(), message.getGroupId(), message.getTimestamp(),
+                message.getSender(), null, message.getContent());
+        return append(payload);
+    }
+
+    private long append(ByteBuffer payload) {
+        lock.lock();
+        try {
+            return appendLocked(payload);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long appendLocked(ByteBuffer payload) {
+        int recordSize = HEADER_SIZE + payload.remaining();
+        // A record always leaves room behind it for the zero length that marks the end of a segment
+        if (recordSize > segmentSize - HEADER_SIZE) {
+            throw new RuntimeException("Message too large for the journal segment size");
+        }
+
+        long position = writePosition;
+        int offset = offsetOf(position);
+        if (offset + recordSize > segmentSize - HEADER_SIZE) {
+            // Not enough room: the zero bytes left behind end this segment for readers
+            position = (segmentIndex(position) + 1) * segmentSize;
+            offset = 0;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer segment = segment(segmentIndex(position)).duplicate();
+        segment.position(offset);
+        segment.putInt(payload.remaining());
+        segment.putInt((int) crc.getValue());
+        segment.put(payload);
+        if (forceOnAppend) segment(segmentIndex(position)).force(offset, recordSize);
+
+        // Publishing the new position makes the record visible to readFrom on other threads
+        writePosition = position + recordSize;
+        return writePosition;
+    }
+
+    // Reads up to max records starting at position, stopping at the current write position
+    List<Entry> readFrom(long position, int max) {
+        long end = writePosition;
+        List<Entry> entries = new ArrayList<>();
+        while (position < end && entries.size() < max) {
+            int offset = offsetOf(position);
+            ByteBuffer segment = segmentForRead(segmentIndex(position));
+            int length = offset + HEADER_SIZE <= segmentSize ? segment.getInt(offset) : 0;
+            if (length == 0) {
+                position = (segmentIndex(position) + 1) * segmentSize;
+                continue;
+            }
+            ByteBuffer payload = segment.duplicate().position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + length);
+            position += HEADER_SIZE + length;
+            entries.add(decode(payload.slice(), position));
+        }
+        return entries;
+    }
+
+    // Everything before position is in the database; segments that lie entirely before it are deleted.
+    // Called by the thread that calls readFrom, and appends only touch segments at or after the
+    // checkpoint, so nothing can still be reading a segment when it is unmapped
+    void checkpoint(long position) {
+        lock.lock();
+        try {
+            if (position <= checkpoint) return;
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, position);
+            checkpointChannel.write(value, 0);
+            if (forceOnAppend) checkpointChannel.force(false);
+            checkpoint = position;
+
+            long firstLive = segmentIndex(position);
+            for (Long index : new ArrayList<>(segments.keySet())) {
+                if (index < firstLive) {
+                    unmap(segments.remove(index));
+                    Files.deleteIfExists(segmentPath(index));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write journal checkpoint", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            for (MappedByteBuffer segment : segments.values()) {
+                segment.force();
+                unmap(segment);
+            }
+            segments.clear();
+            checkpointChannel.force(true);
+            checkpointChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+        if (checkpointChannel.read(value, 0) < Long.BYTES) return 0;
+        return value.getLong(0);
+    }
+
+    // Finds the end of the last intact record after the checkpoint. Whatever follows it (a record torn
+    // by a crash) is zeroed, so appends continue right there and readers never see the damaged bytes
+    private long recoverWritePosition() throws IOException {
+        long firstLive = segmentIndex(checkpoint);
+        long lastSegment = firstLive;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".journal")) {
+                    long index = Long.parseLong(name.substring(8, name.length() - 8));
+                    if (index < firstLive) Files.deleteIfExists(file);
+                    else lastSegment = Math.max(lastSegment, index);
+                }
+            }
+        }
+
+        long position = checkpoint;
+        while (Files.exists(segmentPath(segmentIndex(position)))) {
+            long index = segmentIndex(position);
+            int offset = offsetOf(position);
+            ByteBuffer segment = segment(index).duplicate();
+            int length = offset + HEADER_SIZE <= segmentSize ? segment.getInt(offset) : 0;
+            if (length == 0) {
+                if (index == lastSegment) break;
+                position = (index + 1) * segmentSize;
+                continue;
+            }
+            if (length < 0 || offset + HEADER_SIZE + length > segmentSize) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(segment.position(offset + HEADER_SIZE).limit(offset + HEADER_SIZE + length));
+            if ((int) crc.getValue() != segment.getInt(offset + 4)) break;
+            position += HEADER_SIZE + length;
+        }
+
+        long index = segmentIndex(position);
+        if (Files.exists(segmentPath(index))) {
+            MappedByteBuffer segment = segment(index);
+            for (int i = offsetOf(position); i < segmentSize; i++) segment.put(i, (byte) 0);
+        }
+        for (long later = index + 1; later <= lastSegment; later++) {
+            unmap(segments.remove(later));
+            Files.deleteIfExists(segmentPath(later));
+        }
+        return position;
+    }
+
+    private ByteBuffer segmentForRead(long index) {
+        return segment(index).duplicate();
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments.computeIfAbsent(index, this::mapSegment);
+    }
+
+    private MappedByteBuffer mapSegment(long index) {
+        try (FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map journal segment " + index, e);
+        }
+    }
+
+    // A mapping otherwise lives until the buffer is garbage collected, keeping a deleted segment's
+    // disk space and address range in use. The buffer must not be touched afterwards
+    private static void unmap(MappedByteBuffer segment) {
+        if (segment == null || UNMAPPER == null) return;
+        try {
+            UNMAPPER.invoke(UNSAFE, segment);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not unmap journal segment", e);
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("segment-%010d.journal", index));
+    }
+
+    private long segmentIndex(long position) {
+        return position / segmentSize;
+    }
+
+    private int offsetOf(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private static ByteBuffer encode(byte type, Long id, Long groupId, LocalDateTime timestamp,
+                                     String sender, String receiver, String content) {
+        byte[] senderBytes = bytes(sender);
+        byte[] receiverBytes = bytes(receiver);
+        byte[] contentBytes = bytes(content);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 8 + 8 + 4
+                + 12 + length(senderBytes) + length(receiverBytes) + length(contentBytes));
+        buffer.put(type);
+        buffer.putLong(id);
+        buffer.putLong(groupId != null ? groupId : 0L);
+        // Only an encoding: the same offset is used to decode, so the local time round-trips unchanged
+        buffer.putLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(timestamp.getNano());
+        putString(buffer, senderBytes);
+        putString(buffer, receiverBytes);
+        putString(buffer, contentBytes);
+        return buffer.flip();
+    }
+
+    private static Entry decode(ByteBuffer buffer, long endPosition) {
+        byte type = buffer.get();
+        long id = buffer.getLong();
+        long groupId = buffer.getLong();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        String sender = getString(buffer);
+        String receiver = getString(buffer);
+        String content = getString(buffer);
+
+        if (type == DIRECT_MESSAGE) {
+            Message message = Message.builder()
+                    .id(id)
+                    .sender(sender)
+                    .receiver(receiver)
+                    .content(content)
+                    .timestamp(timestamp)
+                    .conversationKey(Message.conversationKey(sender, receiver))
+                    .build();
+            return new Entry(message, null, endPosition);
+        }
+
+        ChatGroup group = new ChatGroup();
+        group.setId(groupId);
+        GroupMessage message = new GroupMessage();
+        message.setId(id);
+        message.setGroup(group);
+        message.setSender(sender);
+        message.setContent(content);
+        message.setTimestamp(timestamp);
+        return new Entry(null, message, endPosition);
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int length(byte[] value) {
+        return value != null ? value.length : 0;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value != null ? value.length : -1);
+        if (value != null) buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.demo.persistence;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Monthly partitions for message and group_messages. Tables are range-partitioned by id
+ * rather than by timestamp, so the id primary key, ON CONFLICT (id) and the keyset
+ * queries keep working unchanged: the month is encoded in the id's high bits, and at the
+ * start of each month the id sequence jumps to that month's range. Each month therefore
+ * gets its own small heap and indexes, and old months are dropped whole instead of vacuumed.
+ *
+ * Months older than archive-after-months are exported to a SegmentFile and dropped from
+ * the database; months older than retention-months are deleted outright. Existing plain
+ * tables are converted on first start, keeping all their rows as one legacy partition.
+ *
+ * The (conversation, id) indexes and the group foreign key are created here rather than
+ * declared on the entities, because Hibernate's schema update does not see them on a
+ * partitioned table and would try to create them again on every start.
+ */
+@Component
+public class MessagePartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePartitions.class);
+
+    // 2^40 ids per month from 2020-01, which keeps ids below 2^53 for JavaScript clients for centuries
+    static final YearMonth EPOCH = YearMonth.of(2020, 1);
+    static final int MONTH_SHIFT = 40;
+
+    // Only one node at a time runs maintenance
+    private static final long MAINTENANCE_LOCK = 0x63686174L;
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('?(-?\\d+)'?\\)");
+
+    private static final String[] TABLES = {MessageArchive.MESSAGES, MessageArchive.GROUP_MESSAGES};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate exportJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageArchive archive;
+
+    @Value("${chat.partitions.archive-after-months:6}")
+    private int archiveAfterMonths;
+
+    @Value("${chat.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @Value("${chat.partitions.check-interval-ms:60000}")
+    private long checkIntervalMs;
+
+    private volatile Thread maintainer;
+
+    public MessagePartitions(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             MessageArchive archive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.archive = archive;
+        // Streams a partition through a cursor instead of loading it into memory
+        this.exportJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.exportJdbcTemplate.setFetchSize(1000);
+    }
+
+    static long monthStart(YearMonth month) {
+        return ChronoUnit.MONTHS.between(EPOCH, month) << MONTH_SHIFT;
+    }
+
+    static String partitionName(String table, YearMonth month) {
+        return String.format("%s_p%04d_%02d", table, month.getYear(), month.getMonthValue());
+    }
+
+    // Before MessageSearchIndex, which installs its trigger and index on the partitioned parent
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void install() {
+        createIndexes();
+        for (String table : TABLES) {
+            String kind = jdbcTemplate.queryForObject(
+                    "SELECT relkind::text FROM pg_class WHERE oid = ?::regclass", String.class, table);
+            if ("r".equals(kind)) convert(table);
+        }
+        maintain();
+
+        maintainer = new Thread(this::runMaintainer, "message-partitions");
+        maintainer.setDaemon(true);
+        maintainer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        Thread thread = maintainer;
+        if (thread == null) return;
+        thread.interrupt();
+        thread.join();
+    }
+
+    private void runMaintainer() {
+        while (true) {
+            try {
+                Thread.sleep(checkIntervalMs);
+                maintain();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Partition maintenance failed", e);
+            }
+        }
+    }
+
+    // Before any conversion, so a converted table carries them over to the partitioned one
+    private void createIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_message_conversation_key_id ON message (conversation_key, id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_group_messages_group_id_id ON group_messages (group_id, id)");
+        jdbcTemplate.execute("DO $$ BEGIN IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = 'group_messages'::regclass " +
+                "AND contype = 'f' AND confrelid = 'chat_groups'::regclass) " +
+                "THEN ALTER TABLE group_messages ADD CONSTRAINT fk_group_messages_group " +
+                "FOREIGN KEY (group_id) REFERENCES chat_groups (id); END IF; END $$");
+    }
+
+    /**
+     * Creates this and next month's partitions, moves the id sequence into this month and drops
+     * expired months in one short transaction. Each month due for the archive is then exported
+     * in a transaction of its own and detached and dropped in another, so no lock is held for
+     * longer than one month's export.
+     */
+    void maintain() {
+        YearMonth now = YearMonth.now();
+        long retentionBound = retentionMonths > 0 ? monthStart(now.minusMonths(retentionMonths)) : Long.MIN_VALUE;
+        long archiveBound = archiveAfterMonths > 0 ? monthStart(now.minusMonths(archiveAfterMonths)) : Long.MIN_VALUE;
+        List<Archival> due = new ArrayList<>();
+        Boolean maintained = transactionTemplate.execute(status -> {
+            if (!lockMaintenance()) return false;
+
+            for (String table : TABLES) {
+                createPartition(table, now);
+                createPartition(table, now.plusMonths(1));
+                // setval with is_called = false: the next id handed out is exactly the month's first
+                jdbcTemplate.queryForList("SELECT setval(?::regclass, ?, false) FROM " + table + "_id_seq " +
+                        "WHERE last_value < ?", Long.class, table + "_id_seq", monthStart(now), monthStart(now));
+
+                for (Partition partition : partitions(table)) {
+                    if (partition.upperBound <= retentionBound) {
+                        drop(table, partition.name);
+                        log.info("Retention dropped partition {}", partition.name);
+                    } else if (partition.upperBound <= archiveBound) {
+                        due.add(new Archival(table, partition));
+                    }
+                }
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(maintained)) return;
+
+        if (retentionMonths > 0) {
+            for (String table : TABLES) {
+                try {
+                    archive.deleteBelow(table, retentionBound);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        for (Archival archival : due) {
+            archive(archival.table(), archival.partition());
+        }
+    }
+
+    // Only one node at a time runs maintenance; each transaction takes the lock again
+    private boolean lockMaintenance() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(?)", Boolean.class, MAINTENANCE_LOCK));
+    }
+
+    private void archive(String table, Partition partition) {
+        Long exported = transactionTemplate.execute(status -> lockMaintenance() ? export(table, partition) : null);
+        if (exported == null) return;
+
+        Boolean dropped = transactionTemplate.execute(status -> {
+            if (!lockMaintenance()) return false;
+            // Writes were only blocked during the export; make sure none reached the month since
+            jdbcTemplate.execute("LOCK TABLE " + partition.name + " IN SHARE MODE");
+            long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + partition.name, Long.class);
+            if (rows != exported) {
+                log.warn("Partition {} changed after export ({} rows, {} exported), exporting again next round",
+                        partition.name, rows, exported);
+                return false;
+            }
+            drop(table, partition.name);
+            return true;
+        });
+        if (Boolean.TRUE.equals(dropped)) log.info("Archived partition {}", partition.name);
+    }
+
+    private void createPartition(String table, YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(table, month) + " PARTITION OF " + table +
+                " FOR VALUES FROM (" + monthStart(month) + ") TO (" + monthStart(month.plusMonths(1)) + ")");
+    }
+
+    private List<Partition> partitions(String table) {
+        return jdbcTemplate.query(
+                "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = ?::regclass",
+                (rs, rowNum) -> {
+                    Matcher bound = UPPER_BOUND.matcher(rs.getString(2));
+                    long upper = bound.find() ? Long.parseLong(bound.group(1)) : Long.MAX_VALUE;
+                    return new Partition(rs.getString(1), upper);
+                }, table);
+    }
+
+    // Rows are written grouped by conversation, oldest first, straight from the partition's index.
+    // A segment left by an earlier export whose drop did not commit is replaced. Returns the row count
+    private long export(String table, Partition partition) {
+        boolean direct = MessageArchive.MESSAGES.equals(table);
+        String sql = direct
+                ? "SELECT id, sender, receiver, content, timestamp, coalesce(conversation_key, '') AS k " +
+                  "FROM " + partition.name + " ORDER BY conversation_key, id"
+                : "SELECT id, sender, NULL AS receiver, content, timestamp, coalesce(group_id::text, '') AS k " +
+                  "FROM " + partition.name + " ORDER BY group_id, id";
+
+        // Nothing can write to the month while it is exported; it is months old, so nothing should
+        jdbcTemplate.execute("LOCK TABLE " + partition.name + " IN SHARE MODE");
+        try (SegmentFile.Writer writer = archive.writer(table, partition.name)) {
+            exportJdbcTemplate.query(sql, (ResultSet rs) -> {
+                try {
+                    writer.append(rs.getString("k"), toRow(rs));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.finish(partition.upperBound);
+            archive.register(table, partition.name);
+            return writer.rows();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive " + partition.name, e);
+        }
+    }
+
+    private static SegmentFile.Row toRow(ResultSet rs) throws SQLException {
+        Timestamp timestamp = rs.getTimestamp("timestamp");
+        return new SegmentFile.Row(rs.getLong("id"), rs.getString("sender"), rs.getString("receiver"),
+                rs.getString("content"), timestamp != null ? timestamp.getTime() : null);
+    }
+
+    private void drop(String table, String partition) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+        jdbcTemplate.execute("DROP TABLE " + partition);
+    }
+
+    /**
+     * One-time conversion of a plain table into a partitioned one with the same name. The
+     * old table becomes the partition for every id below this month's range, keeping its
+     * indexes, so the conversion rewrites nothing; the range check is validated beforehand
+     * so attaching it needs no scan under the exclusive lock.
+     */
+    private void convert(String table) {
+        long base = monthStart(YearMonth.now());
+        String legacy = table + "_legacy";
+        String rangeCheck = legacy + "_range";
+
+        Boolean checked = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = ? AND conrelid = ?::regclass)",
+                Boolean.class, rangeCheck, table);
+        if (!Boolean.TRUE.equals(checked)) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + rangeCheck +
+                    " CHECK (id IS NOT NULL AND id < " + base + ") NOT VALID");
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table + " VALIDATE CONSTRAINT " + rangeCheck);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + table + " IN ACCESS EXCLUSIVE MODE");
+
+            String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, table);
+            long lastId = sequence == null ? 0 : jdbcTemplate.queryForObject("SELECT last_value FROM " + sequence, Long.class);
+            String identity = jdbcTemplate.queryForObject(
+                    "SELECT attidentity::text FROM pg_attribute WHERE attrelid = ?::regclass AND attname = 'id'",
+                    String.class, table);
+            String primaryKey = jdbcTemplate.queryForObject(
+                    "SELECT conname FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'p'", String.class, table);
+            // Definitions still name the original table, which is what they are recreated on
+            List<String[]> indexes = jdbcTemplate.query(
+                    "SELECT indexname, indexdef FROM pg_indexes WHERE schemaname = current_schema() " +
+                    "AND tablename = ? AND indexname <> ?",
+                    (rs, rowNum) -> new String[]{rs.getString(1), rs.getString(2)}, table, primaryKey);
+            List<String[]> foreignKeys = jdbcTemplate.query(
+                    "SELECT conname, pg_get_constraintdef(oid) FROM pg_constraint WHERE conrelid = ?::regclass AND contype = 'f'",
+                    (rs, rowNum) -> new String[]{rs.getString(1), rs.getString(2)}, table);
+            // Row triggers (the search trigger) are installed again on the parent
+            List<String> triggers = jdbcTemplate.queryForList(
+                    "SELECT tgname FROM pg_trigger WHERE tgrelid = ?::regclass AND NOT tgisinternal", String.class, table);
+
+            jdbcTemplate.execute("ALTER TABLE " + table + " RENAME TO " + legacy);
+            if (identity != null && !identity.isEmpty()) {
+                jdbcTemplate.execute("ALTER TABLE " + legacy + " ALTER COLUMN id DROP IDENTITY");
+            } else {
+                jdbcTemplate.execute("ALTER TABLE " + legacy + " ALTER COLUMN id DROP DEFAULT");
+            }
+            jdbcTemplate.execute("ALTER TABLE " + legacy + " RENAME CONSTRAINT " + primaryKey + " TO " + legacy + "_pkey");
+            for (String[] index : indexes) {
+                jdbcTemplate.execute("ALTER INDEX " + index[0] + " RENAME TO " + legacyName(index[0]));
+            }
+            for (String trigger : triggers) {
+                jdbcTemplate.execute("DROP TRIGGER " + trigger + " ON " + legacy);
+            }
+
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + table + "_id_seq");
+            jdbcTemplate.queryForObject("SELECT setval(?::regclass, ?, false)", Long.class,
+                    table + "_id_seq", Math.max(lastId + 1, base));
+            jdbcTemplate.execute("CREATE TABLE " + table + " (LIKE " + legacy + " INCLUDING DEFAULTS) PARTITION BY RANGE (id)");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT nextval('" + table + "_id_seq')");
+            jdbcTemplate.execute("ALTER SEQUENCE " + table + "_id_seq OWNED BY " + table + ".id");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + primaryKey + " PRIMARY KEY (id)");
+            jdbcTemplate.execute("ALTER TABLE " + table + " ATTACH PARTITION " + legacy +
+                    " FOR VALUES FROM (MINVALUE) TO (" + base + ")");
+            // Matching indexes and foreign keys on the legacy partition are attached, not rebuilt
+            for (String[] index : indexes) {
+                jdbcTemplate.execute(index[1]);
+            }
+            for (String[] foreignKey : foreignKeys) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + foreignKey[0] + " " + foreignKey[1]);
+            }
+            jdbcTemplate.execute("ALTER TABLE " + legacy + " DROP CONSTRAINT " + rangeCheck);
+        });
+        log.info("Converted {} to monthly partitions, existing rows kept in {}", table, legacy);
+    }
+
+    private static String legacyName(String name) {
+        // Postgres truncates identifiers to 63 bytes, which would cut the suffix off
+        return (name.length() <= 56 ? name : name.substring(0, 56)) + "_legacy";
+    }
+
+    private record Partition(String name, long upperBound) {
+    }
+
+    private record Archival(String table, Partition partition) {
+    }
+}
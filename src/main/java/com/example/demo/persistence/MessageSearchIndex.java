@@ -0,0 +1,150 @@
+package com.example.demo.persistence;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Postgres full-text index over message and group_messages content. A trigger fills
+ * search_vector on every insert or content change, whichever path writes the row, and a
+ * GIN index over (conversation, search_vector) answers a search within the caller's
+ * conversations. Rows older than the trigger are filled by a resumable background backfill.
+ */
+@Component
+public class MessageSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    // No stemming or stop words: chat text is short, mixed-language and full of names
+    public static final String TS_CONFIG = "simple";
+
+    private static final String[][] TABLES = {
+            // table, conversation column
+            {"message", "conversation_key"},
+            {"group_messages", "group_id"},
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${chat.search.backfill.batch-size:5000}")
+    private int batchSize;
+
+    @Value("${chat.search.backfill.pause-ms:50}")
+    private long pauseMs;
+
+    private volatile Thread backfill;
+
+    public MessageSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Runs after Hibernate has created the tables and MessagePartitions has converted them; every statement is idempotent
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void install() {
+        jdbcTemplate.execute(
+                "CREATE OR REPLACE FUNCTION chat_search_vector() RETURNS trigger AS $$ BEGIN " +
+                "NEW.search_vector := to_tsvector('" + TS_CONFIG + "', coalesce(NEW.content, '')); " +
+                "RETURN NEW; END $$ LANGUAGE plpgsql");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS search_backfill (" +
+                "table_name varchar(64) PRIMARY KEY, last_id bigint NOT NULL, end_id bigint NOT NULL)");
+
+        boolean compositeIndex = enableBtreeGin();
+        for (String[] table : TABLES) {
+            String name = table[0];
+            jdbcTemplate.execute("ALTER TABLE " + name + " ADD COLUMN IF NOT EXISTS search_vector tsvector");
+            jdbcTemplate.execute("DO $$ BEGIN IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = 'trg_" + name + "_search' " +
+                    "AND tgrelid = '" + name + "'::regclass) " +
+                    "THEN CREATE TRIGGER trg_" + name + "_search BEFORE INSERT OR UPDATE OF content ON " + name +
+                    " FOR EACH ROW EXECUTE FUNCTION chat_search_vector(); END IF; END $$");
+            // Every row past end_id was inserted through the trigger
+            jdbcTemplate.update("INSERT INTO search_backfill (table_name, last_id, end_id) " +
+                    "SELECT ?, 0, coalesce(max(id), 0) FROM " + name + " ON CONFLICT (table_name) DO NOTHING", name);
+            // CONCURRENTLY so a large table keeps taking writes while the index builds. A partitioned
+            // table cannot build concurrently, but its partitions are created with the index already
+            String columns = compositeIndex ? table[1] + ", search_vector" : "search_vector";
+            String concurrently = isPartitioned(name) ? "" : "CONCURRENTLY ";
+            dropIfInvalid("idx_" + name + "_search", concurrently);
+            jdbcTemplate.execute("CREATE INDEX " + concurrently +
+                    "IF NOT EXISTS idx_" + name + "_search ON " + name + " USING gin (" + columns + ")");
+        }
+
+        backfill = new Thread(this::runBackfill, "search-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        Thread thread = backfill;
+        if (thread == null) return;
+        thread.interrupt();
+        thread.join();
+    }
+
+    private boolean isPartitioned(String table) {
+        return "p".equals(jdbcTemplate.queryForObject(
+                "SELECT relkind::text FROM pg_class WHERE oid = ?::regclass", String.class, table));
+    }
+
+    // A concurrent build that failed or was cancelled leaves an invalid index behind, which
+    // IF NOT EXISTS would keep forever while queries ignore it; drop it so it is built again
+    private void dropIfInvalid(String index, String concurrently) {
+        Boolean valid = jdbcTemplate.query("SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)",
+                rs -> rs.next() ? rs.getBoolean(1) : null, index);
+        if (Boolean.FALSE.equals(valid)) {
+            log.warn("Search index {} is invalid, rebuilding it", index);
+            jdbcTemplate.execute("DROP INDEX " + concurrently + "IF EXISTS " + index);
+        }
+    }
+
+    // btree_gin lets one GIN index hold the conversation column next to the vector, so a
+    // search reads only the caller's conversations; without it the index covers the vector alone
+    private boolean enableBtreeGin() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS btree_gin");
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("btree_gin unavailable, search index covers content only: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // Walks each table by id range and records progress, so a restart resumes where it stopped
+    private void runBackfill() {
+        for (String[] table : TABLES) {
+            String name = table[0];
+            long lastId = jdbcTemplate.queryForObject(
+                    "SELECT last_id FROM search_backfill WHERE table_name = ?", Long.class, name);
+            long endId = jdbcTemplate.queryForObject(
+                    "SELECT end_id FROM search_backfill WHERE table_name = ?", Long.class, name);
+            if (lastId >= endId) continue;
+            log.info("Search backfill of {} from id {} to {}", name, lastId, endId);
+
+            while (lastId < endId) {
+                long upTo = Math.min(lastId + batchSize, endId);
+                try {
+                    jdbcTemplate.update("UPDATE " + name + " SET search_vector = to_tsvector('" + TS_CONFIG +
+                            "', coalesce(content, '')) WHERE id > ? AND id <= ? AND search_vector IS NULL", lastId, upTo);
+                    jdbcTemplate.update("UPDATE search_backfill SET last_id = ? WHERE table_name = ?", upTo, name);
+                    lastId = upTo;
+                    // Leave room for live traffic between batches
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (DataAccessException e) {
+                    log.warn("Search backfill of {} stopped at id {}", name, lastId, e);
+                    return;
+                }
+            }
+            log.info("Search backfill of {} done", name);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import com.example.demo.service.ConversationSummaryService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects chat messages from the send handlers and writes them in multi-row batches,
+ * flushing when a batch is full or the oldest queued message has waited max-delay-ms.
+ *
+ * In FLUSH mode ids are drawn from the table's sequence when a batch is flushed, inside its
+ * transaction and under a transaction-scoped advisory lock that every node's flusher takes.
+ * Batches therefore commit one at a time in id order, and a reader that sees an id already
+ * sees every lower one, so "after" cursors (history, sync) cannot pass a row that commits
+ * late. Every insert into message and group_messages goes through here for that reason,
+ * and write() returns once the batch is committed.
+ *
+ * In ENQUEUE mode write() returns as soon as the message is queued. Its id comes from a
+ * block of sequence ids the node holds in memory; the flusher fetches the next block
+ * between batches, so sending normally never waits on the database, and batches commit
+ * without the lock. The price is the ordering guarantee: nodes hand out their blocks side
+ * by side and commit independently, so an "after" cursor can pass a row that commits
+ * late, and a failed flush loses messages that were already acknowledged. Either way
+ * callers broadcast a message that already has its id.
+ *
+ * In JOURNAL mode the queue is replaced by a local MessageJournal: messages are appended
+ * there and a replayer thread copies the journal into the database, retrying while the
+ * database is unavailable. Inserts ignore ids that already exist, so replaying a journal
+ * after a crash is safe. A row the database refuses for any reason other than being
+ * unreachable is moved to a dead-letter journal (chat.journal.dir/dead-letter) before the
+ * checkpoint passes it, since its sender was already told it was sent; it stays there
+ * for an operator. Ids come from a LocalIdAllocator instead of the sequence, so
+ * sending needs no database at all. Those ids follow send time across nodes, but rows
+ * reach the database only as fast as each node replays, so an "after" cursor can pass a
+ * message still waiting in another node's journal. Every node should run the same mode,
+ * and chat.journal.node-id must be unique per node.
+ */
+@Component
+public class MessageWritePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageWritePipeline.class);
+
+    private static final String INSERT_MESSAGE =
+            "INSERT INTO message (id, sender, receiver, content, timestamp, conversation_key) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    private static final String INSERT_GROUP_MESSAGE =
+            "INSERT INTO group_messages (id, sender, content, timestamp, group_id) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (id) DO NOTHING";
+    private static final long MAX_RETRY_BACKOFF_MS = 5000;
+    // Sequence ids an ENQUEUE node fetches at a time
+    private static final int ID_BLOCK = 1024;
+
+    // FLUSH mode: held from drawing a batch's ids to its commit; a batch with both kinds takes them in this order
+    private static final long MESSAGE_ID_LOCK = 0x6368617401L;
+    private static final long GROUP_MESSAGE_ID_LOCK = 0x6368617402L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConversationSummaryService conversationSummaryService;
+
+    @Value("${chat.write-pipeline.durability:FLUSH}")
+    private DurabilityMode durability;
+
+    @Value("${chat.write-pipeline.batch-size:256}")
+    private int batchSize;
+
+    @Value("${chat.write-pipeline.max-delay-ms:5}")
+    private long maxDelayMs;
+
+    @Value("${chat.write-pipeline.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.write-pipeline.enqueue-timeout-ms:5000}")
+    private long enqueueTimeoutMs;
+
+    @Value("${chat.journal.dir:data/journal}")
+    private String journalDir;
+
+    @Value("${chat.journal.segment-size-mb:64}")
+    private int journalSegmentSizeMb;
+
+    @Value("${chat.journal.force-on-append:false}")
+    private boolean journalForceOnAppend;
+
+    @Value("${chat.journal.node-id:0}")
+    private int journalNodeId;
+
+    private BlockingQueue<PendingWrite> queue;
+    private MessageJournal journal;
+    private MessageJournal deadLetters;
+    // Held from id allocation to append so the journal holds each kind in id order. Both may wait
+    // on the disk, and a monitor held across that would pin a virtual thread to its carrier
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private LocalIdAllocator messageIds;
+    private LocalIdAllocator groupMessageIds;
+    private IdReserve messageIdReserve;
+    private IdReserve groupMessageIdReserve;
+    private Thread flusher;
+    private volatile boolean running;
+
+    public MessageWritePipeline(JdbcTemplate jdbcTemplate,
+                                ConversationSummaryService conversationSummaryService) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Plain JDBC transactions: the batches never touch JPA, and these support savepoints
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.conversationSummaryService = conversationSummaryService;
+    }
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        if (durability == DurabilityMode.JOURNAL) {
+            journal = new MessageJournal(Path.of(journalDir), journalSegmentSizeMb * 1024 * 1024, journalForceOnAppend);
+            // Forced on append: the main journal's checkpoint moves past a row once it is here
+            deadLetters = new MessageJournal(Path.of(journalDir, "dead-letter"), journalSegmentSizeMb * 1024 * 1024, true);
+            messageIds = new LocalIdAllocator(Path.of(journalDir, "ids-message"), journalNodeId);
+            groupMessageIds = new LocalIdAllocator(Path.of(journalDir, "ids-group_messages"), journalNodeId);
+            // Starts at the checkpoint, so anything a crash left unpersisted is replayed first
+            flusher = new Thread(this::runReplayer, "message-journal-replayer");
+        } else {
+            if (durability == DurabilityMode.ENQUEUE) {
+                messageIdReserve = new IdReserve("message");
+                groupMessageIdReserve = new IdReserve("group_messages");
+            }
+            flusher = new Thread(this::runFlusher, "message-write-pipeline");
+        }
+        flusher.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException, IOException {
+        running = false;
+        flusher.interrupt();
+        flusher.join();
+        if (journal != null) {
+            // Unreplayed records stay in the journal for the next start
+            journal.close();
+            deadLetters.close();
+            messageIds.close();
+            groupMessageIds.close();
+            return;
+        }
+        // Whatever was still queued at shutdown gets written before the context closes
+        List<PendingWrite> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) flush(rest);
+    }
+
+    public DurabilityMode getDurability() {
+        return durability;
+    }
+
+    // Assigns the conversation key, queues the message and, in FLUSH mode, waits for its commit
+    public void write(Message message) {
+        message.setConversationKey(Message.conversationKey(message.getSender(), message.getReceiver()));
+        if (journal != null) {
+            journalLock.lock();
+            try {
+                message.setId(messageIds.nextId());
+                journal.append(message);
+            } finally {
+                journalLock.unlock();
+            }
+            return;
+        }
+        if (messageIdReserve != null) {
+            message.setId(messageIdReserve.nextId());
+            enqueue(new PendingWrite(message, null));
+            return;
+        }
+        await(enqueue(new PendingWrite(message, null)));
+    }
+
+    public void write(GroupMessage message) {
+        if (journal != null) {
+            journalLock.lock();
+            try {
+                message.setId(groupMessageIds.nextId());
+                journal.append(message);
+            } finally {
+                journalLock.unlock();
+            }
+            return;
+        }
+        if (groupMessageIdReserve != null) {
+            message.setId(groupMessageIdReserve.nextId());
+            enqueue(new PendingWrite(null, message));
+            return;
+        }
+        await(enqueue(new PendingWrite(null, message)));
+    }
+
+    // Order in the queue does not matter: ids were handed out already (ENQUEUE) or are drawn at flush (FLUSH)
+    private PendingWrite enqueue(PendingWrite write) {
+        try {
+            if (!queue.offer(write, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Message write queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing message", e);
+        }
+        return write;
+    }
+
+    private void await(PendingWrite write) {
+        try {
+            write.done.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Failed to persist message", e.getCause());
+        }
+    }
+
+    private void runFlusher() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                if (messageIdReserve != null) {
+                    messageIdReserve.topUp();
+                    groupMessageIdReserve.topUp();
+                }
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) break;
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) flush(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void runReplayer() {
+        long position = journal.getCheckpoint();
+        while (running) {
+            List<MessageJournal.Entry> entries = journal.readFrom(position, batchSize);
+            if (entries.isEmpty()) {
+                if (!pause(maxDelayMs)) return;
+                continue;
+            }
+
+            List<PendingWrite> batch = new ArrayList<>(entries.size());
+            entries.forEach(entry -> batch.add(new PendingWrite(entry.message, entry.groupMessage)));
+            // Journal ids were assigned at append time, so the batch goes in without the id locks
+            try {
+                if (!persistWithRetry(batch)) return;
+            } catch (RuntimeException e) {
+                log.error("Journal replay stopped at position {}; restart once the cause is fixed", position, e);
+                return;
+            }
+
+            position = entries.get(entries.size() - 1).endPosition;
+            journal.checkpoint(position);
+        }
+    }
+
+    // Retries while the database is unreachable; any other failure is isolated to its rows, and
+    // a row that fails on its own goes to the dead-letter journal. False once the pipeline stops
+    private boolean persistWithRetry(List<PendingWrite> batch) {
+        long backoffMs = 100;
+        while (true) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+                return true;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    if (batch.size() == 1) {
+                        deadLetter(batch.get(0), e);
+                        return true;
+                    }
+                    for (PendingWrite write : batch) {
+                        if (!persistWithRetry(List.of(write))) return false;
+                    }
+                    return true;
+                }
+                log.warn("Database unavailable, journal replay retrying in {} ms: {}", backoffMs, e.getMessage());
+                if (!pause(backoffMs)) return false;
+                backoffMs = Math.min(backoffMs * 2, MAX_RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    private static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (durability == DurabilityMode.FLUSH) drawIds(batch);
+                insertIsolatingFailures(batch, status);
+            });
+            batch.forEach(write -> write.done.complete(null));
+        } catch (RuntimeException e) {
+            log.error("Failed to persist a batch of {} messages", batch.size(), e);
+            batch.forEach(write -> write.fail(e));
+        }
+    }
+
+    private void drawIds(List<PendingWrite> batch) {
+        List<PendingWrite> messages = batch.stream().filter(write -> write.message != null).toList();
+        List<PendingWrite> groupMessages = batch.stream().filter(write -> write.message == null).toList();
+        if (!messages.isEmpty()) drawIds(messages, "message", MESSAGE_ID_LOCK);
+        if (!groupMessages.isEmpty()) drawIds(groupMessages, "group_messages", GROUP_MESSAGE_ID_LOCK);
+    }
+
+    private void drawIds(List<PendingWrite> writes, String table, long lock) {
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?)::text", String.class, lock);
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence(?, 'id')) FROM generate_series(1, ?)",
+                Long.class, table, writes.size());
+        long[] sorted = ids.stream().mapToLong(Long::longValue).sorted().toArray();
+        for (int i = 0; i < writes.size(); i++) writes.get(i).assignId(sorted[i]);
+    }
+
+    // One bad row should not sink the others: on failure each row is retried behind its own
+    // savepoint, still in this transaction and, in FLUSH mode, under the id locks, so the order holds
+    private void insertIsolatingFailures(List<PendingWrite> batch, TransactionStatus status) {
+        Object whole = status.createSavepoint();
+        try {
+            insertBatch(batch);
+            return;
+        } catch (DataAccessException e) {
+            status.rollbackToSavepoint(whole);
+        }
+        for (PendingWrite write : batch) {
+            Object single = status.createSavepoint();
+            try {
+                insertBatch(List.of(write));
+                status.releaseSavepoint(single);
+            } catch (DataAccessException e) {
+                status.rollbackToSavepoint(single);
+                log.error("Failed to persist message {}", write.id(), e);
+                write.fail(e);
+            }
+        }
+    }
+
+    private void deadLetter(PendingWrite write, RuntimeException cause) {
+        if (write.message != null) deadLetters.append(write.message);
+        else deadLetters.append(write.groupMessage);
+        log.error("Journaled message {} was refused by the database and moved to the dead-letter journal",
+                write.id(), cause);
+    }
+
+    private void insertBatch(List<PendingWrite> batch) {
+        List<Object[]> messageRows = new ArrayList<>();
+        List<Object[]> groupRows = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+
+        for (PendingWrite write : batch) {
+            if (write.message != null) {
+                Message m = write.message;
+                messages.add(m);
+                messageRows.add(new Object[]{m.getId(), m.getSender(), m.getReceiver(), m.getContent(),
+                        Timestamp.valueOf(m.getTimestamp()), m.getConversationKey()});
+            } else {
+                GroupMessage m = write.groupMessage;
+                groupRows.add(new Object[]{m.getId(), m.getSender(), m.getContent(),
+                        Timestamp.valueOf(m.getTimestamp()), m.getGroupId()});
+            }
+        }
+
+        if (!messageRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE, messageRows);
+            conversationSummaryService.recordMessages(messages);
+        }
+        if (!groupRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_GROUP_MESSAGE, groupRows);
+        }
+    }
+
+    private record IdBlock(long[] ids, YearMonth month) {
+    }
+
+    // ENQUEUE mode: a table's sequence ids, fetched a block ahead of need. A block left over
+    // from an earlier month is discarded, so rows keep landing in their own month's partition
+    private final class IdReserve {
+        private final String table;
+        private final ReentrantLock lock = new ReentrantLock();
+        private IdBlock current = new IdBlock(new long[0], null);
+        private int next;
+        private volatile IdBlock ahead;
+
+        private IdReserve(String table) {
+            this.table = table;
+        }
+
+        long nextId() {
+            lock.lock();
+            try {
+                YearMonth now = YearMonth.now();
+                if (next == current.ids().length || !now.equals(current.month())) {
+                    IdBlock block = ahead;
+                    ahead = null;
+                    // Only when the flusher has not kept up does a sender wait for the database
+                    current = block != null && now.equals(block.month()) ? block : fetch();
+                    next = 0;
+                }
+                return current.ids()[next++];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called by the flusher between batches, so the next block is there before it is needed
+        void topUp() {
+            if (ahead != null) return;
+            lock.lock();
+            int remaining;
+            try {
+                remaining = current.ids().length - next;
+            } finally {
+                lock.unlock();
+            }
+            if (remaining >= ID_BLOCK / 2) return;
+            try {
+                ahead = fetch();
+            } catch (DataAccessException e) {
+                log.warn("Could not fetch ids ahead for {}: {}", table, e.getMessage());
+            }
+        }
+
+        private IdBlock fetch() {
+            YearMonth month = YearMonth.now();
+            long[] ids = jdbcTemplate.queryForList(
+                    "SELECT nextval(pg_get_serial_sequence(?, 'id')) FROM generate_series(1, ?)",
+                    Long.class, table, ID_BLOCK).stream().mapToLong(Long::longValue).sorted().toArray();
+            return new IdBlock(ids, month);
+        }
+    }
+
+    private static final class PendingWrite {
+        private final Message message;
+        private final GroupMessage groupMessage;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private PendingWrite(Message message, GroupMessage groupMessage) {
+            this.message = message;
+            this.groupMessage = groupMessage;
+        }
+
+        private void assignId(long id) {
+            if (message != null) message.setId(id);
+            else groupMessage.setId(id);
+        }
+
+        private void fail(Throwable e) {
+            done.completeExceptionally(e);
+        }
+
+        private Long id() {
+            return message != null ? message.getId() : groupMessage.getId();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.demo.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Immutable archive of one exported message partition. Rows are grouped by conversation
+ * and stored in id order as deflate-compressed blocks of at most BLOCK_ROWS rows; an
+ * uncompressed footer maps each conversation to its blocks and their id ranges, so a
+ * history page inflates only the blocks it needs.
+ *
+ * Layout: [magic][blocks...][footer][long footer offset][long upper bound][magic]
+ */
+final class SegmentFile implements AutoCloseable {
+
+    record Row(long id, String sender, String receiver, String content, Long timestampMillis) {
+    }
+
+    record Block(long offset, int length, long minId, long maxId) {
+    }
+
+    static final int BLOCK_ROWS = 1024;
+
+    private static final byte[] MAGIC = "CHATSEG1".getBytes(StandardCharsets.US_ASCII);
+    private static final int TRAILER_SIZE = 16 + MAGIC.length;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long upperBound;
+    private final Map<String, List<Block>> blocks;
+    // One reference held by the archive plus one per read in progress; the channel closes with
+    // the last, so retention can drop a segment that is still being read
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private SegmentFile(Path path, FileChannel channel, long upperBound, Map<String, List<Block>> blocks) {
+        this.path = path;
+        this.channel = channel;
+        this.upperBound = upperBound;
+        this.blocks = blocks;
+    }
+
+    static SegmentFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = readFully(channel, size - TRAILER_SIZE, TRAILER_SIZE);
+            long footerOffset = trailer.getLong();
+            long upperBound = trailer.getLong();
+            byte[] magic = new byte[MAGIC.length];
+            trailer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a message segment: " + path);
+            }
+
+            ByteBuffer footer = readFully(channel, footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            int keys = in.readInt();
+            Map<String, List<Block>> blocks = new HashMap<>(keys * 2);
+            for (int i = 0; i < keys; i++) {
+                String key = in.readUTF();
+                int count = in.readInt();
+                List<Block> list = new ArrayList<>(count);
+                for (int b = 0; b < count; b++) {
+                    list.add(new Block(in.readLong(), in.readInt(), in.readLong(), in.readLong()));
+                }
+                blocks.put(key, list);
+            }
+            return new SegmentFile(path, channel, upperBound, blocks);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    // Every id in this segment is below this; it is the exported partition's upper bound
+    long upperBound() {
+        return upperBound;
+    }
+
+    // In ascending id order; empty when the conversation has nothing in this segment
+    List<Block> blocks(String key) {
+        return blocks.getOrDefault(key, List.of());
+    }
+
+    List<Row> read(Block block) {
+        try {
+            ByteBuffer compressed = readFully(channel, block.offset(), block.length());
+            DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed.array())));
+            int count = in.readInt();
+            List<Row> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                String sender = readString(in);
+                String receiver = readString(in);
+                String content = readString(in);
+                long timestamp = in.readLong();
+                rows.add(new Row(id, sender, receiver, content, timestamp == Long.MIN_VALUE ? null : timestamp));
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read segment " + path, e);
+        }
+    }
+
+    // False once the segment has been closed and every read has finished; skip it then
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) return false;
+            if (references.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() > 0) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close segment " + path, e);
+        }
+    }
+
+    // Drops the archive's reference; reads still in progress finish first
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) release();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Segment truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rows must arrive grouped by key and in ascending id order within a key. The segment
+     * is written to a temporary file and only moved into place by finish(), so a crash
+     * mid-export never leaves a partial segment behind.
+     */
+    static final class Writer implements AutoCloseable {
+
+        private final Path target;
+        private final Path temp;
+        private final OutputStream file;
+        private final Map<String, List<Block>> index = new LinkedHashMap<>();
+        private final List<Row> pending = new ArrayList<>(BLOCK_ROWS);
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        private String currentKey;
+        private long position;
+        private long rows;
+
+        Writer(Path target) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.createDirectories(target.getParent());
+            this.file = Files.newOutputStream(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            write(MAGIC);
+        }
+
+        void append(String key, Row row) throws IOException {
+            if (!key.equals(currentKey)) {
+                flushBlock();
+                if (index.containsKey(key)) {
+                    throw new IllegalStateException("Rows for " + key + " are not contiguous");
+                }
+                currentKey = key;
+                index.put(key, new ArrayList<>());
+            }
+            pending.add(row);
+            rows++;
+            if (pending.size() == BLOCK_ROWS) flushBlock();
+        }
+
+        long rows() {
+            return rows;
+        }
+
+        void finish(long upperBound) throws IOException {
+            flushBlock();
+            long footerOffset = position;
+
+            ByteArrayOutputStream footer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(footer);
+            out.writeInt(index.size());
+            for (Map.Entry<String, List<Block>> entry : index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Block block : entry.getValue()) {
+                    out.writeLong(block.offset());
+                    out.writeInt(block.length());
+                    out.writeLong(block.minId());
+                    out.writeLong(block.maxId());
+                }
+            }
+            out.writeLong(footerOffset);
+            out.writeLong(upperBound);
+            out.write(MAGIC);
+            write(footer.toByteArray());
+            file.close();
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            file.close();
+            Files.deleteIfExists(temp);
+        }
+
+        private void flushBlock() throws IOException {
+            if (pending.isEmpty()) return;
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            deflater.reset();
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater));
+            out.writeInt(pending.size());
+            for (Row row : pending) {
+                out.writeLong(row.id());
+                writeString(out, row.sender());
+                writeString(out, row.receiver());
+                writeString(out, row.content());
+                out.writeLong(row.timestampMillis() == null ? Long.MIN_VALUE : row.timestampMillis());
+            }
+            out.close();
+
+            byte[] block = bytes.toByteArray();
+            index.get(currentKey).add(new Block(position, block.length,
+                    pending.get(0).id(), pending.get(pending.size() - 1).id()));
+            write(block);
+            pending.clear();
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            file.write(bytes);
+            position += bytes.length;
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo.presence;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel: timeouts go into one of a fixed ring of buckets by deadline, and a
+ * single thread visits one bucket per tick. Scheduling is O(1) and a tick only looks at the
+ * entries in its bucket, however many timeouts are pending. Deadlines are rounded up to
+ * the tick. Cancellation is left to the callback, which can ignore stale entries.
+ */
+public class HashedTimingWheel<T> {
+
+    private static final Logger log = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    private final long tickMillis;
+    private final Queue<Entry<T>>[] buckets;
+    private final Consumer<T> onExpiry;
+    private final long startMillis = System.currentTimeMillis();
+
+    private Thread worker;
+    private volatile boolean running;
+    private volatile long tick;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(long tickMillis, int wheelSize, Consumer<T> onExpiry) {
+        this.tickMillis = tickMillis;
+        this.buckets = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) buckets[i] = new ConcurrentLinkedQueue<>();
+        this.onExpiry = onExpiry;
+    }
+
+    public void start(String threadName) {
+        running = true;
+        worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join();
+    }
+
+    public void schedule(T item, long deadlineMillis) {
+        long deadlineTick = Math.max(tick + 1, ceilDiv(deadlineMillis - startMillis, tickMillis));
+        buckets[(int) (deadlineTick % buckets.length)].add(new Entry<>(item, deadlineTick));
+    }
+
+    private void run() {
+        while (running) {
+            long next = tick + 1;
+            long sleep = startMillis + next * tickMillis - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick = next;
+            expire(next);
+        }
+    }
+
+    void expire(long currentTick) {
+        Iterator<Entry<T>> entries = buckets[(int) (currentTick % buckets.length)].iterator();
+        while (entries.hasNext()) {
+            Entry<T> entry = entries.next();
+            // Later laps of the wheel stay in the bucket until their round comes up
+            if (entry.deadlineTick > currentTick) continue;
+            entries.remove();
+            try {
+                onExpiry.accept(entry.item);
+            } catch (RuntimeException e) {
+                log.error("Timeout callback failed", e);
+            }
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    private record Entry<T>(T item, long deadlineTick) {
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.demo.presence;
+
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.cache.LongHashSet;
+import com.example.demo.cache.UserIdCache;
+import com.example.demo.dto.PresenceUpdate;
+import com.example.demo.dto.TypingNotice;
+import com.example.demo.dto.TypingRequest;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is online, kept only in memory. Sessions join on STOMP connect, leave on disconnect,
+ * and are kept alive by any inbound frame including heartbeats; a session that goes quiet
+ * for the idle timeout is dropped by a timing wheel. Presence changes and typing notices go
+ * to /user/queue/presence and /user/queue/typing of online friends or group members only,
+ * named from the ids of the users online here, so fan-out needs no username lookups. A
+ * user's friend set is dropped from FriendshipCache once their last session leaves.
+ *
+ * Presence is per node. With the relay broker (chat.broker.mode=relay) each node only knows
+ * the sessions connected to it: isOnline and onlineFriends answer for this node, a user
+ * connected elsewhere counts as offline here, and presence and typing notices only reach
+ * friends and members on the node where the change happened.
+ */
+@Component
+public class PresenceRegistry implements ChannelInterceptor {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UserIdCache userIdCache;
+    private final FriendshipCache friendshipCache;
+    private final GroupMembershipIndex groupMembershipIndex;
+
+    @Value("${chat.presence.idle-timeout-ms:45000}")
+    private long idleTimeoutMs;
+
+    @Value("${chat.presence.typing-interval-ms:2000}")
+    private long typingIntervalMs;
+
+    private final ConcurrentHashMap<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    // User id -> username of everyone online here; changes together with sessionsByUser
+    private final ConcurrentHashMap<Long, String> onlineUsers = new ConcurrentHashMap<>();
+    // Username -> conversation -> when that user last sent a typing notice to it
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Long>> lastTyping = new ConcurrentHashMap<>();
+
+    private HashedTimingWheel<String> idleSessions;
+
+    // The template sits behind the broker channel, which carries this interceptor's channel config
+    public PresenceRegistry(@Lazy SimpMessagingTemplate messagingTemplate, UserIdCache userIdCache,
+                            FriendshipCache friendshipCache, GroupMembershipIndex groupMembershipIndex) {
+        this.messagingTemplate = messagingTemplate;
+        this.userIdCache = userIdCache;
+        this.friendshipCache = friendshipCache;
+        this.groupMembershipIndex = groupMembershipIndex;
+    }
+
+    @PostConstruct
+    void start() {
+        idleSessions = new HashedTimingWheel<>(1000, 512, this::checkIdle);
+        idleSessions.start("presence-timing-wheel");
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        idleSessions.stop();
+    }
+
+    public boolean isOnline(String username) {
+        return sessionsByUser.containsKey(username);
+    }
+
+    public List<String> onlineFriends(String username) {
+        Long userId = userIdCache.userId(username);
+        if (userId == null) return List.of();
+        List<String> online = new ArrayList<>();
+        for (long friendId : friendshipCache.friendsOf(userId).toArray()) {
+            String friend = onlineUsers.get(friendId);
+            if (friend != null) online.add(friend);
+        }
+        return online;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user != null && sessionId != null) touch(sessionId, user.getName());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        remove(event.getSessionId());
+    }
+
+    // Every inbound frame, heartbeats included, counts as activity
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.CONNECT || type == SimpMessageType.DISCONNECT) return message;
+
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        Principal user = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        if (sessionId != null && user != null) touch(sessionId, user.getName());
+        return message;
+    }
+
+    public void typing(String username, TypingRequest request) {
+        String conversation = request.getGroupId() != null ? "group:" + request.getGroupId() : "dm:" + request.getTo();
+        if (!allowTyping(username, conversation)) return;
+
+        if (request.getGroupId() == null) {
+            String friend = request.getTo();
+            if (friend != null && isOnline(friend) && friendshipCache.areFriends(username, friend)) {
+                messagingTemplate.convertAndSendToUser(friend, "/queue/typing", new TypingNotice(username, null));
+            }
+            return;
+        }
+
+        Long groupId = request.getGroupId();
+        if (!groupMembershipIndex.isMember(groupId, username)) return;
+        LongHashSet members = groupMembershipIndex.members(groupId);
+        if (members == null) return;
+
+        TypingNotice notice = new TypingNotice(username, groupId);
+        for (long memberId : members.toArray()) {
+            String member = onlineUsers.get(memberId);
+            if (member != null && !member.equals(username)) {
+                messagingTemplate.convertAndSendToUser(member, "/queue/typing", notice);
+            }
+        }
+    }
+
+    private boolean allowTyping(String username, String conversation) {
+        long now = System.currentTimeMillis();
+        boolean[] allowed = {false};
+        lastTyping.computeIfAbsent(username, u -> new ConcurrentHashMap<>())
+                .compute(conversation, (key, last) -> {
+                    if (last != null && now - last < typingIntervalMs) return last;
+                    allowed[0] = true;
+                    return now;
+                });
+        return allowed[0];
+    }
+
+    private void touch(String sessionId, String username) {
+        SessionState state = sessions.get(sessionId);
+        if (state != null) {
+            state.lastSeen = System.currentTimeMillis();
+            return;
+        }
+
+        // Sessions are added and removed under the user's entry, so a remove cannot land
+        // between registering the session and adding it to the user's set
+        SessionState fresh = new SessionState(username, userIdCache.userId(username));
+        boolean[] added = {false};
+        boolean[] cameOnline = {false};
+        sessionsByUser.compute(username, (name, ids) -> {
+            if (sessions.putIfAbsent(sessionId, fresh) != null) return ids;
+            Set<String> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            added[0] = true;
+            cameOnline[0] = ids == null;
+            if (cameOnline[0] && fresh.userId != null) onlineUsers.put(fresh.userId, name);
+            set.add(sessionId);
+            return set;
+        });
+        if (!added[0]) return;
+        idleSessions.schedule(sessionId, fresh.lastSeen + idleTimeoutMs);
+        if (cameOnline[0]) announce(username, true);
+    }
+
+    private void remove(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        if (state == null) return;
+
+        boolean[] wentOffline = {false};
+        sessionsByUser.compute(state.username, (name, ids) -> {
+            if (!sessions.remove(sessionId, state) || ids == null) return ids;
+            ids.remove(sessionId);
+            wentOffline[0] = ids.isEmpty();
+            if (wentOffline[0] && state.userId != null) onlineUsers.remove(state.userId);
+            return ids.isEmpty() ? null : ids;
+        });
+        if (wentOffline[0]) {
+            lastTyping.remove(state.username);
+            announce(state.username, false);
+            if (state.userId != null) friendshipCache.invalidate(state.userId);
+        }
+    }
+
+    // Entries are never cancelled: a session that was active meanwhile is pushed to its new deadline
+    private void checkIdle(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        if (state == null) return;
+        long deadline = state.lastSeen + idleTimeoutMs;
+        if (System.currentTimeMillis() >= deadline) {
+            remove(sessionId);
+        } else {
+            idleSessions.schedule(sessionId, deadline);
+        }
+    }
+
+    private void announce(String username, boolean online) {
+        PresenceUpdate update = new PresenceUpdate(username, online);
+        for (String friend : onlineFriends(username)) {
+            messagingTemplate.convertAndSendToUser(friend, "/queue/presence", update);
+        }
+    }
+
+    private static final class SessionState {
+        final String username;
+        // Null for a user that no longer exists
+        final Long userId;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        SessionState(String username, Long userId) {
+            this.username = username;
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.ConversationSummary;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, Long> {
+
+    List<ConversationSummary> findByOwnerOrderByLastMessageIdDesc(String owner, Limit limit);
+
+    List<ConversationSummary> findByOwnerAndPartnerIn(String owner, Collection<String> partners);
+
+    List<ConversationSummary> findByOwnerAndLastMessageIdGreaterThanOrderByLastMessageIdAsc(String owner, Long lastMessageId,
+                                                                                          Limit limit);
+}
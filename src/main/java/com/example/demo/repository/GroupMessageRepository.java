@@ -1,9 +1,13 @@
 package com.example.demo.repository;
 import com.example.demo.entity.GroupMessage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
 public interface GroupMessageRepository extends JpaRepository<GroupMessage, Long> {
-    List<GroupMessage> findByGroupIdOrderByTimestampAsc(Long groupId);
+    // Keyset pages over the (group_id, id) index for history and delta sync
+    List<GroupMessage> findByGroup_IdAndIdGreaterThanOrderByIdAsc(Long groupId, Long after, Limit limit);
+
+    List<GroupMessage> findByGroup_IdAndIdLessThanOrderByIdDesc(Long groupId, Long before, Limit limit);
 }
@@ -1,18 +1,15 @@
 package com.example.demo.repository;
 
 import com.example.demo.entity.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    List<Message> findBySenderAndReceiverOrReceiverAndSenderOrderByTimestampAsc(
-        String sender1, String receiver1,
-        String sender2, String receiver2
-    );
-    
-    List<Message> findBySenderOrReceiverOrderByTimestampDesc(
-        String sender, String receiver
-    );
+    // Keyset pages over the (conversation_key, id) index: the id predicate replaces OFFSET
+    List<Message> findByConversationKeyAndIdLessThanOrderByIdDesc(String conversationKey, Long before, Limit limit);
+
+    List<Message> findByConversationKeyAndIdGreaterThanOrderByIdAsc(String conversationKey, Long after, Limit limit);
 }
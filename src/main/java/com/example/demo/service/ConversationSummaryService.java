@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.ConversationSummary;
+import com.example.demo.entity.Message;
+import com.example.demo.repository.ConversationSummaryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class ConversationSummaryService {
+
+    public static final int DEFAULT_RECENT_LIMIT = 50;
+    public static final int MAX_RECENT_LIMIT = 200;
+
+    @Autowired
+    private ConversationSummaryRepository conversationSummaryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final String UPSERT_SUMMARY =
+            "INSERT INTO conversation_summaries " +
+            "(owner, partner, last_message_id, last_sender, last_content, last_timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (owner, partner) DO UPDATE SET " +
+            "last_message_id = EXCLUDED.last_message_id, last_sender = EXCLUDED.last_sender, " +
+            "last_content = EXCLUDED.last_content, last_timestamp = EXCLUDED.last_timestamp " +
+            // Keeps an out-of-order write from replacing a newer message
+            "WHERE conversation_summaries.last_message_id < EXCLUDED.last_message_id";
+
+    // Called by the write pipeline inside the transaction that inserts the batch
+    public void recordMessages(List<Message> messages) {
+        // Only the newest message per (owner, partner) matters, and one row may not be upserted twice per statement
+        Map<String, Object[]> latest = new LinkedHashMap<>();
+        for (Message m : messages) {
+            for (String owner : new String[]{m.getSender(), m.getReceiver()}) {
+                String partner = owner.equals(m.getSender()) ? m.getReceiver() : m.getSender();
+                Object[] row = {owner, partner, m.getId(), m.getSender(), m.getContent(),
+                        Timestamp.valueOf(m.getTimestamp())};
+                latest.merge(owner.length() + ":" + owner + ":" + partner, row,
+                        (a, b) -> (Long) a[2] >= (Long) b[2] ? a : b);
+            }
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SUMMARY, new ArrayList<>(latest.values()));
+    }
+
+    public List<Message> getRecentChats(String username, Integer limit) {
+        int size = limit == null ? DEFAULT_RECENT_LIMIT : Math.max(1, Math.min(limit, MAX_RECENT_LIMIT));
+        return conversationSummaryRepository.findByOwnerOrderByLastMessageIdDesc(username, Limit.of(size))
+                .stream()
+                .map(ConversationSummaryService::toMessage)
+                .toList();
+    }
+
+    // Same shape the recent chats endpoint has always returned
+    private static Message toMessage(ConversationSummary summary) {
+        String receiver = summary.getOwner().equals(summary.getLastSender())
+                ? summary.getPartner()
+                : summary.getOwner();
+        return Message.builder()
+                .id(summary.getLastMessageId())
+                .sender(summary.getLastSender())
+                .receiver(receiver)
+                .content(summary.getLastContent())
+                .timestamp(summary.getLastTimestamp())
+                .build();
+    }
+
+    // Fills the table once from existing history; a no-op as soon as any summary row exists
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        Boolean populated = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM conversation_summaries)", Boolean.class);
+        if (Boolean.TRUE.equals(populated)) return;
+
+        jdbcTemplate.update(
+                "INSERT INTO conversation_summaries " +
+                "(owner, partner, last_message_id, last_sender, last_content, last_timestamp) " +
+                "SELECT DISTINCT ON (owner, partner) owner, partner, id, sender, content, timestamp FROM (" +
+                "  SELECT sender AS owner, receiver AS partner, id, sender, content, timestamp FROM message" +
+                "  UNION ALL" +
+                "  SELECT receiver AS owner, sender AS partner, id, sender, content, timestamp FROM message" +
+                ") t ORDER BY owner, partner, id DESC " +
+                "ON CONFLICT (owner, partner) DO NOTHING");
+    }
+}
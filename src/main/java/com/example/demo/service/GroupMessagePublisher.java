@@ -0,0 +1,42 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.GroupMessageWireDTO;
+import com.example.demo.entity.GroupMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+
+/**
+ * Sends group messages to /topic/group/{id} as a GroupMessageWireDTO, encoded to JSON
+ * once. The broker hands that same byte array to every subscriber of the group, and the
+ * payload codec negotiation reuses its transcoding of it across the fan-out.
+ */
+@Component
+public class GroupMessagePublisher {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectWriter writer;
+
+    public GroupMessagePublisher(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.writer = objectMapper.writerFor(GroupMessageWireDTO.class);
+    }
+
+    public void publish(GroupMessage message) {
+        byte[] payload;
+        try {
+            payload = writer.writeValueAsBytes(GroupMessageWireDTO.from(message));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to encode group message: " + e.getMessage(), e);
+        }
+        MessageHeaders headers = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON));
+        messagingTemplate.send("/topic/group/" + message.getGroupId(), MessageBuilder.createMessage(payload, headers));
+    }
+}
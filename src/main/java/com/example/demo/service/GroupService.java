@@ -1,18 +1,24 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.GroupMembershipIndex;
 import com.example.demo.dto.CreateGroupRequest;
+import com.example.demo.dto.CursorPage;
 import com.example.demo.entity.ChatGroup;
 import com.example.demo.entity.GroupMessage;
 import com.example.demo.entity.User;
+import com.example.demo.persistence.MessageArchive;
+import com.example.demo.persistence.MessageWritePipeline;
 import com.example.demo.repository.ChatGroupRepository;
 import com.example.demo.repository.GroupMessageRepository;
 import com.example.demo.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -30,7 +36,16 @@ public class GroupService {
     private GroupMessageRepository groupMessageRepository;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private MessageWritePipeline messageWritePipeline;
+
+    @Autowired
+    private GroupMessagePublisher groupMessagePublisher;
+
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @Autowired
+    private MessageArchive messageArchive;
 
     public ChatGroup createGroup(String creatorUsername, CreateGroupRequest request) {
         ChatGroup group = new ChatGroup();
@@ -50,6 +65,7 @@ public class GroupService {
 
         // Save group first to generate ID
         ChatGroup savedGroup = chatGroupRepository.save(group);
+        groupMembershipIndex.groupSaved(savedGroup);
 
         // Create system message
         GroupMessage systemMessage = new GroupMessage();
@@ -58,10 +74,10 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(savedGroup);
 
-        groupMessageRepository.save(systemMessage);
+        messageWritePipeline.write(systemMessage);
 
         // Send message to WebSocket topic
-        messagingTemplate.convertAndSend("/topic/group/" + savedGroup.getId(), systemMessage);
+        groupMessagePublisher.publish(systemMessage);
 
         return savedGroup;
     }
@@ -86,6 +102,7 @@ public class GroupService {
 
         group.getMembers().add(newUser);
         chatGroupRepository.save(group);
+        groupMembershipIndex.memberAdded(groupId, newUser);
 
         // Send system message
         GroupMessage systemMessage = new GroupMessage();
@@ -94,8 +111,8 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(group);
 
-        groupMessageRepository.save(systemMessage);
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, systemMessage);
+        messageWritePipeline.write(systemMessage);
+        groupMessagePublisher.publish(systemMessage);
     }
 
     public List<ChatGroup> getGroupsForUser(String username) {
@@ -108,19 +125,64 @@ public class GroupService {
         return List.copyOf(group.getMembers());
     }
 
-    public List<GroupMessage> getGroupMessageHistory(Long groupId, String username) {
-        ChatGroup group = chatGroupRepository.findById(groupId)
-                .orElseThrow(() -> new RuntimeException("Group not found"));
-
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    // Paged like direct message history: the latest page without a cursor, then "before" or "after"
+    public CursorPage<GroupMessage> getGroupMessageHistory(Long groupId, String username,
+                                                           Long before, Long after, Integer limit) {
+        if (!groupMembershipIndex.groupExists(groupId)) {
+            throw new RuntimeException("Group not found");
+        }
 
-        if (!group.getMembers().contains(user)) {
+        if (!groupMembershipIndex.isMember(groupId, username)) {
             throw new RuntimeException("You are not a member of this group");
         }
 
-        return groupMessageRepository.findByGroupIdOrderByTimestampAsc(groupId);
+        if (before != null && after != null) {
+            throw new RuntimeException("Use either 'before' or 'after', not both.");
+        }
+
+        int pageSize = limit == null ? MessageService.DEFAULT_PAGE_SIZE
+                : Math.max(1, Math.min(limit, MessageService.MAX_PAGE_SIZE));
+        int fetch = pageSize + 1;
+
+        if (after != null) {
+            List<GroupMessage> rows = groupMessagesAfter(groupId, after, fetch);
+            boolean hasMore = rows.size() > pageSize;
+            List<GroupMessage> page = hasMore ? rows.subList(0, pageSize) : rows;
+            Long nextCursor = hasMore ? page.get(page.size() - 1).getId() : null;
+            return new CursorPage<>(page, nextCursor, hasMore);
+        }
+
+        List<GroupMessage> rows = groupMessagesBefore(groupId, before != null ? before : Long.MAX_VALUE, fetch);
+        boolean hasMore = rows.size() > pageSize;
+        List<GroupMessage> page = new ArrayList<>(hasMore ? rows.subList(0, pageSize) : rows);
+        Collections.reverse(page);
+        Long nextCursor = hasMore ? page.get(0).getId() : null;
+        return new CursorPage<>(page, nextCursor, hasMore);
+    }
+
+    // Newest first; archived months continue where the database runs out, as for direct messages
+    private List<GroupMessage> groupMessagesBefore(Long groupId, long before, int limit) {
+        List<GroupMessage> rows = new ArrayList<>(groupMessageRepository.findByGroup_IdAndIdLessThanOrderByIdDesc(
+                groupId, before, Limit.of(limit)));
+        if (rows.size() < limit && messageArchive.archivedBelow(MessageArchive.GROUP_MESSAGES) > 0) {
+            long olderThan = rows.isEmpty() ? before : rows.get(rows.size() - 1).getId();
+            rows.addAll(messageArchive.groupBefore(groupId, olderThan, limit - rows.size()));
+        }
+        return rows;
+    }
 
+    // Oldest first: the archive when the cursor is inside it, then the database
+    private List<GroupMessage> groupMessagesAfter(Long groupId, long after, int limit) {
+        List<GroupMessage> rows = new ArrayList<>();
+        if (after < messageArchive.archivedBelow(MessageArchive.GROUP_MESSAGES)) {
+            rows.addAll(messageArchive.groupAfter(groupId, after, limit));
+        }
+        if (rows.size() < limit) {
+            long newerThan = rows.isEmpty() ? after : rows.get(rows.size() - 1).getId();
+            rows.addAll(groupMessageRepository.findByGroup_IdAndIdGreaterThanOrderByIdAsc(
+                    groupId, newerThan, Limit.of(limit - rows.size())));
+        }
+        return rows;
     }
 
     public void leaveGroup(String username, Long groupId) {
@@ -138,6 +200,7 @@ public class GroupService {
 
         if (group.getMembers().isEmpty()) {
             chatGroupRepository.delete(group);
+            groupMembershipIndex.groupDeleted(groupId);
             return;
         }
 
@@ -146,6 +209,7 @@ public class GroupService {
         }
 
         chatGroupRepository.save(group);
+        groupMembershipIndex.memberRemoved(groupId, user);
 
         GroupMessage systemMessage = new GroupMessage();
         systemMessage.setSender("SYSTEM");
@@ -153,8 +217,8 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(group);
 
-        groupMessageRepository.save(systemMessage);
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, systemMessage);
+        messageWritePipeline.write(systemMessage);
+        groupMessagePublisher.publish(systemMessage);
     }
 
     public void kickMember(String requesterUsername, Long groupId, String usernameToKick) {
@@ -181,6 +245,7 @@ public class GroupService {
 
         group.getMembers().remove(toKick);
         chatGroupRepository.save(group);
+        groupMembershipIndex.memberRemoved(groupId, toKick);
 
         GroupMessage systemMessage = new GroupMessage();
         systemMessage.setSender("SYSTEM");
@@ -188,8 +253,8 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(group);
 
-        groupMessageRepository.save(systemMessage);
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, systemMessage);
+        messageWritePipeline.write(systemMessage);
+        groupMessagePublisher.publish(systemMessage);
     }
 
     public void renameGroup(String requesterUsername, Long groupId, String newName) {
@@ -212,8 +277,8 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(group);
 
-        groupMessageRepository.save(systemMessage);
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, systemMessage);
+        messageWritePipeline.write(systemMessage);
+        groupMessagePublisher.publish(systemMessage);
     }
 
     public void transferOwnership(String requesterUsername, Long groupId, String newOwnerUsername) {
@@ -243,8 +308,8 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(group);
 
-        groupMessageRepository.save(systemMessage);
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, systemMessage);
+        messageWritePipeline.write(systemMessage);
+        groupMessagePublisher.publish(systemMessage);
     }
 
     @Transactional
@@ -266,12 +331,13 @@ public class GroupService {
         systemMessage.setTimestamp(LocalDateTime.now());
         systemMessage.setGroup(group);
 
-        groupMessageRepository.save(systemMessage);
+        messageWritePipeline.write(systemMessage);
 
-        messagingTemplate.convertAndSend("/topic/group/" + groupId, systemMessage);
+        groupMessagePublisher.publish(systemMessage);
 
         // Now safely delete the group
         chatGroupRepository.delete(group);
+        groupMembershipIndex.groupDeleted(groupId);
     }
 
 }
@@ -0,0 +1,149 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.cache.UserIdCache;
+import com.example.demo.dto.CursorPage;
+import com.example.demo.dto.GroupMessageWireDTO;
+import com.example.demo.entity.Message;
+import com.example.demo.persistence.MessageSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Full-text search over the caller's DMs and groups, through the GIN indexes kept by
+ * MessageSearchIndex. Pages run newest to oldest like history: each page is in ascending
+ * id order and nextCursor goes back as "before".
+ */
+@Service
+public class MessageSearchService {
+
+    public static final int MAX_QUERY_LENGTH = 256;
+
+    // websearch_to_tsquery accepts what users type: words, "quoted phrases", or, -excluded
+    private static final String MATCH =
+            "search_vector @@ websearch_to_tsquery('" + MessageSearchIndex.TS_CONFIG + "', ?)";
+
+    private static final RowMapper<Message> MESSAGE_ROW = (rs, rowNum) -> Message.builder()
+            .id(rs.getLong("id"))
+            .sender(rs.getString("sender"))
+            .receiver(rs.getString("receiver"))
+            .content(rs.getString("content"))
+            .timestamp(toLocalDateTime(rs.getTimestamp("timestamp")))
+            .conversationKey(rs.getString("conversation_key"))
+            .build();
+
+    private static final RowMapper<GroupMessageWireDTO> GROUP_MESSAGE_ROW = (rs, rowNum) -> new GroupMessageWireDTO(
+            rs.getLong("id"),
+            rs.getLong("group_id"),
+            rs.getString("sender"),
+            rs.getString("content"),
+            toLocalDateTime(rs.getTimestamp("timestamp")));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserIdCache userIdCache;
+
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    // One DM conversation when friendUsername is given, otherwise every conversation the caller has
+    public CursorPage<Message> searchMessages(String username, String query, String friendUsername,
+                                              Long before, Integer limit) {
+        String text = validate(query);
+        List<String> keys = new ArrayList<>();
+        if (friendUsername != null) {
+            keys.add(Message.conversationKey(username, friendUsername));
+        } else {
+            List<String> partners = jdbcTemplate.queryForList(
+                    "SELECT partner FROM conversation_summaries WHERE owner = ?", String.class, username);
+            for (String partner : partners) keys.add(Message.conversationKey(username, partner));
+        }
+
+        return page(before, limit, keys.isEmpty(), (upperBound, fetch) -> jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(
+                    "SELECT id, sender, receiver, content, timestamp, conversation_key FROM message " +
+                    "WHERE conversation_key = ANY (?) AND " + MATCH + " AND id < ? ORDER BY id DESC LIMIT ?");
+            ps.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            ps.setString(2, text);
+            ps.setLong(3, upperBound);
+            ps.setInt(4, fetch);
+            return ps;
+        }, MESSAGE_ROW), Message::getId);
+    }
+
+    // One group when groupId is given, otherwise every group the caller is a member of
+    public CursorPage<GroupMessageWireDTO> searchGroupMessages(String username, String query, Long groupId,
+                                                               Long before, Integer limit) {
+        String text = validate(query);
+        List<Long> groupIds;
+        if (groupId != null) {
+            if (!groupMembershipIndex.groupExists(groupId)) {
+                throw new RuntimeException("Group not found");
+            }
+            if (!groupMembershipIndex.isMember(groupId, username)) {
+                throw new RuntimeException("You are not a member of this group");
+            }
+            groupIds = List.of(groupId);
+        } else {
+            Long userId = userIdCache.userId(username);
+            groupIds = userId == null ? List.of() : jdbcTemplate.queryForList(
+                    "SELECT group_id FROM group_members WHERE user_id = ?", Long.class, userId);
+        }
+
+        return page(before, limit, groupIds.isEmpty(), (upperBound, fetch) -> jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(
+                    "SELECT id, group_id, sender, content, timestamp FROM group_messages " +
+                    "WHERE group_id = ANY (?) AND " + MATCH + " AND id < ? ORDER BY id DESC LIMIT ?");
+            ps.setArray(1, con.createArrayOf("bigint", groupIds.toArray()));
+            ps.setString(2, text);
+            ps.setLong(3, upperBound);
+            ps.setInt(4, fetch);
+            return ps;
+        }, GROUP_MESSAGE_ROW), GroupMessageWireDTO::getId);
+    }
+
+    private String validate(String query) {
+        if (query == null || query.isBlank()) {
+            throw new RuntimeException("Search text is required.");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new RuntimeException("Search text is too long (max " + MAX_QUERY_LENGTH + " characters).");
+        }
+        return query.strip();
+    }
+
+    private interface PageQuery<T> {
+        List<T> fetch(long upperBound, int fetch);
+    }
+
+    private static <T> CursorPage<T> page(Long before, Integer limit, boolean noConversations,
+                                          PageQuery<T> query, ToLongFunction<T> idOf) {
+        if (noConversations) return new CursorPage<>(List.of(), null, false);
+
+        int pageSize = limit == null
+                ? MessageService.DEFAULT_PAGE_SIZE
+                : Math.max(1, Math.min(limit, MessageService.MAX_PAGE_SIZE));
+        // One extra row tells whether another page exists without a COUNT query
+        List<T> rows = query.fetch(before != null ? before : Long.MAX_VALUE, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize;
+        List<T> page = new ArrayList<>(hasMore ? rows.subList(0, pageSize) : rows);
+        Collections.reverse(page);
+        Long nextCursor = hasMore ? idOf.applyAsLong(page.get(0)) : null;
+        return new CursorPage<>(page, nextCursor, hasMore);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -1,42 +1,147 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.cache.UserIdCache;
 import com.example.demo.dto.ChatMessage;
+import com.example.demo.dto.CursorPage;
 import com.example.demo.entity.Message;
-import com.example.demo.entity.User;
+import com.example.demo.persistence.MessageArchive;
+import com.example.demo.persistence.MessageWritePipeline;
 import com.example.demo.repository.MessageRepository;
-import com.example.demo.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 @Service
 public class MessageService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+
+    @Autowired
+    private FriendshipCache friendshipCache;
+
     @Autowired
-    private UserRepository userRepository;
+    private UserIdCache userIdCache;
 
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private MessageWritePipeline messageWritePipeline;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     public Message sendMessage(String senderUsername, ChatMessage chatMessage) {
-        User sender = userRepository.findByUsername(senderUsername)
-                .orElseThrow(() -> new RuntimeException("Sender not found"));
+        String receiverUsername = chatMessage.getReceiverUsername();
+
+        if (userIdCache.userId(senderUsername) == null) {
+            throw new RuntimeException("Sender not found");
+        }
 
-        User receiver = userRepository.findByUsername(chatMessage.getReceiverUsername())
-                .orElseThrow(() -> new RuntimeException("Receiver not found"));
+        if (userIdCache.userId(receiverUsername) == null) {
+            throw new RuntimeException("Receiver not found");
+        }
 
-        if (!sender.getFriends().contains(receiver)) {
+        if (!friendshipCache.areFriends(senderUsername, receiverUsername)) {
             throw new RuntimeException("You are not friends with this user.");
         }
 
         Message message = Message.builder()
-                .sender(sender.getUsername())
-                .receiver(receiver.getUsername())
+                .sender(senderUsername)
+                .receiver(receiverUsername)
                 .content(chatMessage.getContent())
                 .timestamp(LocalDateTime.now())
                 .build();
 
-        return messageRepository.save(message);
+        messageWritePipeline.write(message);
+        return message;
+    }
+
+    public CursorPage<Message> getChatHistory(String username, String friendUsername,
+                                              Long before, Long after, Integer limit) {
+        if (before != null && after != null) {
+            throw new RuntimeException("Use either 'before' or 'after', not both.");
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Fetch one extra row to know whether another page exists without a COUNT query
+        int fetch = pageSize + 1;
+
+        String conversationKey = Message.conversationKey(username, friendUsername);
+
+        if (after != null) {
+            List<Message> rows = messagesAfter(conversationKey, after, fetch);
+            boolean hasMore = rows.size() > pageSize;
+            List<Message> page = hasMore ? rows.subList(0, pageSize) : rows;
+            Long nextCursor = hasMore ? page.get(page.size() - 1).getId() : null;
+            return new CursorPage<>(page, nextCursor, hasMore);
+        }
+
+        long upperBound = before != null ? before : Long.MAX_VALUE;
+        List<Message> rows = messagesBefore(conversationKey, upperBound, fetch);
+        boolean hasMore = rows.size() > pageSize;
+        List<Message> page = new ArrayList<>(hasMore ? rows.subList(0, pageSize) : rows);
+        Collections.reverse(page);
+        Long nextCursor = hasMore ? page.get(0).getId() : null;
+        return new CursorPage<>(page, nextCursor, hasMore);
+    }
+
+    // Newest first. Archived months hold only ids below the database's, so they continue
+    // where the database runs out
+    public List<Message> messagesBefore(String conversationKey, long before, int limit) {
+        List<Message> rows = new ArrayList<>(messageRepository.findByConversationKeyAndIdLessThanOrderByIdDesc(
+                conversationKey, before, Limit.of(limit)));
+        if (rows.size() < limit && messageArchive.archivedBelow(MessageArchive.MESSAGES) > 0) {
+            long olderThan = rows.isEmpty() ? before : rows.get(rows.size() - 1).getId();
+            rows.addAll(messageArchive.conversationBefore(conversationKey, olderThan, limit - rows.size()));
+        }
+        return rows;
+    }
+
+    // Oldest first: the archive when the cursor is inside it, then the database
+    public List<Message> messagesAfter(String conversationKey, long after, int limit) {
+        List<Message> rows = new ArrayList<>();
+        if (after < messageArchive.archivedBelow(MessageArchive.MESSAGES)) {
+            rows.addAll(messageArchive.conversationAfter(conversationKey, after, limit));
+        }
+        if (rows.size() < limit) {
+            long newerThan = rows.isEmpty() ? after : rows.get(rows.size() - 1).getId();
+            rows.addAll(messageRepository.findByConversationKeyAndIdGreaterThanOrderByIdAsc(
+                    conversationKey, newerThan, Limit.of(limit - rows.size())));
+        }
+        return rows;
+    }
+
+    // Rows written before conversation_key existed; the key is computed here so it matches Message.conversationKey exactly
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillConversationKeys() {
+        while (true) {
+            List<Object[]> batch = jdbcTemplate.query(
+                    "SELECT id, sender, receiver FROM message WHERE conversation_key IS NULL " +
+                    "AND sender IS NOT NULL AND receiver IS NOT NULL ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new Object[]{
+                            Message.conversationKey(rs.getString("sender"), rs.getString("receiver")),
+                            rs.getLong("id")
+                    },
+                    BACKFILL_BATCH_SIZE);
+            if (batch.isEmpty()) return;
+
+            jdbcTemplate.batchUpdate("UPDATE message SET conversation_key = ? WHERE id = ?", batch);
+            if (batch.size() < BACKFILL_BATCH_SIZE) return;
+        }
     }
 }
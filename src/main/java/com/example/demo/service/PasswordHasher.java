@@ -0,0 +1,143 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing on a small dedicated pool so a login storm cannot take the request
+ * threads, or every CPU, away from chat traffic. Work beyond the queue capacity is refused at
+ * once, and work that waited in the queue past the deadline is dropped rather than hashed for a
+ * client that has likely given up; both surface as {@link PasswordHashingRejectedException}.
+ */
+@Component
+public class PasswordHasher implements DisposableBean {
+
+    // Result of a login check; upgradedHash is set when the stored hash should be replaced
+    public record Verification(boolean matches, String upgradedHash) {
+    }
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long maxQueueWaitNanos;
+    private final boolean upgradeOnLogin;
+
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer queueWaitTimer;
+    private final Counter queueFull;
+    private final Counter expired;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          MeterRegistry meterRegistry,
+                          @Value("${chat.password.threads:0}") int threads,
+                          @Value("${chat.password.queue-capacity:64}") int queueCapacity,
+                          @Value("${chat.password.max-queue-wait-ms:2000}") long maxQueueWaitMs,
+                          @Value("${chat.password.upgrade-on-login:false}") boolean upgradeOnLogin) {
+        this.passwordEncoder = passwordEncoder;
+        this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMs);
+        this.upgradeOnLogin = upgradeOnLogin;
+
+        // Half the CPUs by default, so the other half stays free for chat traffic
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), task -> {
+                    Thread thread = new Thread(task, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.encodeTimer = hashTimer(meterRegistry, "encode");
+        this.matchesTimer = hashTimer(meterRegistry, "matches");
+        this.queueWaitTimer = Timer.builder("chat.password.queue.wait")
+                .description("Time password hashing work waited for a thread")
+                .register(meterRegistry);
+        this.queueFull = rejectedCounter(meterRegistry, "queue-full");
+        this.expired = rejectedCounter(meterRegistry, "expired");
+        Gauge.builder("chat.password.queued", executor, pool -> pool.getQueue().size())
+                .description("Password hashing work waiting for a thread")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<String> encode(CharSequence rawPassword) {
+        return submit(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    // With upgrade-on-login, a matching hash made with an older algorithm or cost is re-encoded
+    // in the same task, while the raw password is at hand
+    public CompletableFuture<Verification> verify(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> {
+            boolean matches = matchesTimer.record(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+            if (!matches || !upgradeOnLogin || !passwordEncoder.upgradeEncoding(encodedPassword)) {
+                return new Verification(matches, null);
+            }
+            return new Verification(true, encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+        });
+    }
+
+    // Completes on the hashing thread, so callers chain anything beyond trivial work with an
+    // *Async stage on their own executor rather than hold a hashing thread
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long waited = System.nanoTime() - queuedAt;
+                queueWaitTimer.record(waited, TimeUnit.NANOSECONDS);
+                if (waited > maxQueueWaitNanos) {
+                    expired.increment();
+                    result.completeExceptionally(new PasswordHashingRejectedException("Login queue wait exceeded"));
+                    return;
+                }
+                if (mdc != null) MDC.setContextMap(mdc);
+                try {
+                    result.complete(work.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    MDC.clear();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queueFull.increment();
+            return CompletableFuture.failedFuture(new PasswordHashingRejectedException("Too many logins in progress"));
+        }
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static Timer hashTimer(MeterRegistry registry, String op) {
+        return Timer.builder("chat.password.hash")
+                .description("Password hash computation")
+                .tag("op", op)
+                .register(registry);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("chat.password.rejected")
+                .description("Password hashing refused for lack of capacity")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
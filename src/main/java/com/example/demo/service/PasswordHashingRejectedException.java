@@ -0,0 +1,9 @@
+package com.example.demo.service;
+
+// Password hashing is at capacity; AuthController answers 429 so the client backs off and retries
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+}
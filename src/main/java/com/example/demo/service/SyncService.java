@@ -0,0 +1,227 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.dto.GroupMessageWireDTO;
+import com.example.demo.dto.SyncRequest;
+import com.example.demo.entity.ConversationSummary;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import com.example.demo.persistence.MessageArchive;
+import com.example.demo.repository.ConversationSummaryRepository;
+import com.example.demo.repository.GroupMessageRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delta sync for reconnecting clients: everything newer than the client's per-conversation
+ * high-water marks, written straight to the response as each conversation is read. A
+ * conversation with more than one page reports hasMore and the cursor to send next time.
+ *
+ * Marks are ids, which is only safe because MessageWritePipeline commits rows in id order
+ * in FLUSH mode: once a client has seen an id, every lower id is already visible. In
+ * ENQUEUE mode nodes commit their prefetched ids independently, and in JOURNAL mode rows
+ * reach the database as each node replays, so a mark can pass a message that commits late.
+ *
+ * One response is bounded: at most MAX_ENTRIES conversations and groups, listed or
+ * discovered, at most MAX_READS of them actually read, and at most MAX_MESSAGES messages.
+ * Conversations whose summary shows nothing past the mark are answered without a read.
+ * What does not fit is reported with hasMore and its cursor unchanged, and discovery
+ * beyond the entry limit with nextSince.
+ */
+@Service
+public class SyncService {
+
+    public static final int MAX_ENTRIES = 1000;
+    public static final int MAX_READS = 200;
+    public static final int MAX_MESSAGES = 5000;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private GroupMessageRepository groupMessageRepository;
+
+    @Autowired
+    private ConversationSummaryRepository conversationSummaryRepository;
+
+    @Autowired
+    private GroupMembershipIndex groupMembershipIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Throws before anything is written, so the caller can still answer 400
+    public void validate(SyncRequest request) {
+        int entries = size(request.getConversations()) + size(request.getGroups());
+        if (entries > MAX_ENTRIES) {
+            throw new RuntimeException("Too many conversations in one sync request (max " + MAX_ENTRIES + ")");
+        }
+    }
+
+    public void writeSync(String username, SyncRequest request, OutputStream out) throws IOException {
+        int pageSize = request.getLimit() == null
+                ? MessageService.DEFAULT_PAGE_SIZE
+                : Math.max(1, Math.min(request.getLimit(), MessageService.MAX_PAGE_SIZE));
+
+        Budget budget = new Budget();
+        Map<String, Long> marks = new LinkedHashMap<>();
+        if (request.getConversations() != null) {
+            request.getConversations().forEach((friend, lastId) -> marks.put(friend, mark(lastId)));
+        }
+        // Newest message per listed conversation, so those with nothing new need no read
+        Map<String, Long> latest = new HashMap<>();
+        if (!marks.isEmpty()) {
+            conversationSummaryRepository.findByOwnerAndPartnerIn(username, marks.keySet())
+                    .forEach(summary -> latest.put(summary.getPartner(), summary.getLastMessageId()));
+        }
+        Long nextSince = discover(username, request, marks, latest);
+
+        try (JsonGenerator json = objectMapper.createGenerator(out)) {
+            json.writeStartObject();
+
+            json.writeArrayFieldStart("conversations");
+            for (Map.Entry<String, Long> conversation : marks.entrySet()) {
+                writeConversation(json, username, conversation.getKey(), conversation.getValue(),
+                        latest.get(conversation.getKey()), pageSize, budget);
+            }
+            json.writeEndArray();
+
+            json.writeArrayFieldStart("groups");
+            if (request.getGroups() != null) {
+                for (Map.Entry<Long, Long> group : request.getGroups().entrySet()) {
+                    writeGroup(json, username, group.getKey(), mark(group.getValue()), pageSize, budget);
+                }
+            }
+            json.writeEndArray();
+
+            if (nextSince != null) json.writeNumberField("nextSince", nextSince);
+            json.writeEndObject();
+        }
+    }
+
+    // Adds conversations the client does not list that moved past "since", oldest change first,
+    // up to the entry limit. Returns the "since" to continue from when some did not fit
+    private Long discover(String username, SyncRequest request, Map<String, Long> marks, Map<String, Long> latest) {
+        if (request.getSince() == null) return null;
+        int room = MAX_ENTRIES - marks.size() - size(request.getGroups());
+        if (room <= 0) return request.getSince();
+
+        List<ConversationSummary> moved = conversationSummaryRepository
+                .findByOwnerAndLastMessageIdGreaterThanOrderByLastMessageIdAsc(username, request.getSince(), Limit.of(room + 1));
+        boolean truncated = moved.size() > room;
+        List<ConversationSummary> included = truncated ? moved.subList(0, room) : moved;
+        for (ConversationSummary summary : included) {
+            if (marks.putIfAbsent(summary.getPartner(), request.getSince()) == null) {
+                latest.put(summary.getPartner(), summary.getLastMessageId());
+            }
+        }
+        return truncated ? included.get(included.size() - 1).getLastMessageId() : null;
+    }
+
+    private void writeConversation(JsonGenerator json, String username, String friend, long after, Long latest,
+                                   int pageSize, Budget budget) throws IOException {
+        List<Message> page = List.of();
+        boolean hasMore = false;
+        // Without a summary row the conversation may predate the summaries, so it is read anyway
+        if (latest == null || latest > after) {
+            int size = budget.take(pageSize);
+            if (size == 0) {
+                hasMore = true;
+            } else {
+                List<Message> rows = messageService.messagesAfter(Message.conversationKey(username, friend), after, size + 1);
+                hasMore = rows.size() > size;
+                page = hasMore ? rows.subList(0, size) : rows;
+                budget.used(size, page.size());
+            }
+        }
+
+        json.writeStartObject();
+        json.writeStringField("with", friend);
+        json.writeArrayFieldStart("messages");
+        for (Message message : page) {
+            json.writeObject(message);
+        }
+        json.writeEndArray();
+        json.writeNumberField("nextCursor", page.isEmpty() ? after : page.get(page.size() - 1).getId());
+        json.writeBooleanField("hasMore", hasMore);
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private void writeGroup(JsonGenerator json, String username, Long groupId, long after, int pageSize,
+                            Budget budget) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("groupId", groupId);
+
+        // Left, kicked or deleted since the last sync: tell the client instead of failing the whole response
+        if (!groupMembershipIndex.isMember(groupId, username)) {
+            json.writeBooleanField("member", false);
+            json.writeEndObject();
+            return;
+        }
+
+        int size = budget.take(pageSize);
+        List<GroupMessage> rows = new ArrayList<>();
+        if (size > 0 && after < messageArchive.archivedBelow(MessageArchive.GROUP_MESSAGES)) {
+            rows.addAll(messageArchive.groupAfter(groupId, after, size + 1));
+        }
+        if (size > 0 && rows.size() <= size) {
+            long newerThan = rows.isEmpty() ? after : rows.get(rows.size() - 1).getId();
+            rows.addAll(groupMessageRepository.findByGroup_IdAndIdGreaterThanOrderByIdAsc(
+                    groupId, newerThan, Limit.of(size + 1 - rows.size())));
+        }
+        boolean hasMore = size == 0 || rows.size() > size;
+        List<GroupMessage> page = rows.size() > size ? rows.subList(0, size) : rows;
+        budget.used(size, page.size());
+
+        json.writeBooleanField("member", true);
+        json.writeArrayFieldStart("messages");
+        for (GroupMessage message : page) {
+            json.writeObject(GroupMessageWireDTO.from(message));
+        }
+        json.writeEndArray();
+        json.writeNumberField("nextCursor", page.isEmpty() ? after : page.get(page.size() - 1).getId());
+        json.writeBooleanField("hasMore", hasMore);
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private static long mark(Long lastId) {
+        return lastId == null ? 0L : lastId;
+    }
+
+    private static int size(Map<?, ?> map) {
+        return map == null ? 0 : map.size();
+    }
+
+    // Reads and messages left in this response
+    private static final class Budget {
+        private int reads = MAX_READS;
+        private int messages = MAX_MESSAGES;
+
+        // The page size for the next read, or 0 when nothing more may be read
+        int take(int pageSize) {
+            return reads > 0 ? Math.min(pageSize, messages) : 0;
+        }
+
+        void used(int size, int returned) {
+            if (size == 0) return;
+            reads--;
+            messages -= returned;
+        }
+    }
+}
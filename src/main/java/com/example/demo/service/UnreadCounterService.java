@@ -0,0 +1,295 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.cache.LongHashSet;
+import com.example.demo.cache.UserIdCache;
+import com.example.demo.dto.UnreadCountDTO;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unread counters per user and conversation. Sends and reads only touch pending deltas in
+ * memory; a background thread coalesces them and upserts one row per touched counter.
+ * Badge reads are one indexed query for the user's non-zero rows plus their pending deltas.
+ * Pending deltas are this node's only; with several nodes the others see them after the flush.
+ *
+ * A flush writes all drained changes in one transaction. The upsert adds deltas, so a failed
+ * flush puts its changes back only when the transaction rolled back; if the commit itself
+ * fails its outcome is unknown, and the changes are dropped rather than risk counting them
+ * twice. The next read of that conversation resets the counter either way.
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final Logger log = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    public static final String DM = "dm";
+    public static final String GROUP = "group";
+
+    private static final String UPSERT =
+            "INSERT INTO unread_counters (owner_id, kind, ref, unread_count, last_message_id, last_read_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (owner_id, kind, ref) DO UPDATE SET " +
+            "unread_count = CASE WHEN ? THEN EXCLUDED.unread_count " +
+            "ELSE unread_counters.unread_count + EXCLUDED.unread_count END, " +
+            "last_message_id = GREATEST(unread_counters.last_message_id, EXCLUDED.last_message_id), " +
+            "last_read_id = GREATEST(unread_counters.last_read_id, EXCLUDED.last_read_id)";
+
+    // After a read that stopped short of the newest message, count what is still unread
+    private static final String RECOUNT_DM =
+            "UPDATE unread_counters SET unread_count = " +
+            "(SELECT COUNT(*) FROM message WHERE conversation_key = ? AND id > unread_counters.last_read_id AND sender <> ?) " +
+            "WHERE owner_id = ? AND kind = 'dm' AND ref = ? AND last_read_id < last_message_id";
+
+    private static final String RECOUNT_GROUP =
+            "UPDATE unread_counters SET unread_count = " +
+            "(SELECT COUNT(*) FROM group_messages WHERE group_id = ? AND id > unread_counters.last_read_id AND sender <> ?) " +
+            "WHERE owner_id = ? AND kind = 'group' AND ref = ? AND last_read_id < last_message_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserIdCache userIdCache;
+    private final GroupMembershipIndex groupMembershipIndex;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${chat.unread.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    // Owner id -> counter -> pending change; inner maps are only touched inside compute on the outer map
+    private final ConcurrentHashMap<Long, Map<CounterKey, Pending>> pendingByOwner = new ConcurrentHashMap<>();
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    public UnreadCounterService(JdbcTemplate jdbcTemplate, UserIdCache userIdCache,
+                                GroupMembershipIndex groupMembershipIndex,
+                                PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userIdCache = userIdCache;
+        this.groupMembershipIndex = groupMembershipIndex;
+        this.transactionManager = transactionManager;
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "unread-counter-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join();
+        flush();
+    }
+
+    public void messageSent(Message message) {
+        Long receiverId = userIdCache.userId(message.getReceiver());
+        if (receiverId == null) return;
+        increment(receiverId, new CounterKey(DM, message.getSender()), message.getId());
+    }
+
+    public void groupMessageSent(GroupMessage message) {
+        LongHashSet members = groupMembershipIndex.members(message.getGroupId());
+        if (members == null) return;
+        Long senderId = userIdCache.userId(message.getSender());
+        CounterKey key = new CounterKey(GROUP, String.valueOf(message.getGroupId()));
+        for (long memberId : members.toArray()) {
+            if (senderId == null || memberId != senderId) {
+                increment(memberId, key, message.getId());
+            }
+        }
+    }
+
+    // O(1): the counter drops to zero now; a read that stopped short is recounted on flush
+    public void markRead(String username, String kind, String ref, long upToId) {
+        if (!DM.equals(kind) && !GROUP.equals(kind)) {
+            throw new RuntimeException("Unknown conversation kind: " + kind);
+        }
+        Long ownerId = userIdCache.userId(username);
+        if (ownerId == null) throw new RuntimeException("User not found");
+        CounterKey key = new CounterKey(kind, GROUP.equals(kind) ? String.valueOf(memberGroupId(username, ref)) : ref);
+
+        pendingByOwner.compute(ownerId, (id, pending) -> {
+            Map<CounterKey, Pending> map = pending != null ? pending : new HashMap<>();
+            map.computeIfAbsent(key, k -> new Pending()).read(username, upToId);
+            return map;
+        });
+    }
+
+    // Group refs end up in a numeric comparison on flush, so only accept groups the reader is in
+    private long memberGroupId(String username, String ref) {
+        long groupId;
+        try {
+            groupId = Long.parseLong(ref);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid group id: " + ref);
+        }
+        if (!groupMembershipIndex.isMember(groupId, username)) {
+            throw new RuntimeException("You are not a member of this group");
+        }
+        return groupId;
+    }
+
+    public List<UnreadCountDTO> getUnreadCounts(String username) {
+        Long ownerId = userIdCache.userId(username);
+        if (ownerId == null) return List.of();
+
+        Map<CounterKey, long[]> counts = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "SELECT kind, ref, unread_count, last_read_id FROM unread_counters WHERE owner_id = ? AND unread_count > 0",
+                rs -> {
+                    counts.put(new CounterKey(rs.getString("kind"), rs.getString("ref")),
+                            new long[] {rs.getLong("unread_count"), rs.getLong("last_read_id")});
+                },
+                ownerId);
+
+        pendingByOwner.computeIfPresent(ownerId, (id, pending) -> {
+            pending.forEach((key, change) -> {
+                long[] stored = counts.computeIfAbsent(key, k -> new long[2]);
+                stored[0] = change.reset ? change.delta : stored[0] + change.delta;
+                stored[1] = Math.max(stored[1], change.readUpTo);
+            });
+            return pending;
+        });
+
+        List<UnreadCountDTO> result = new ArrayList<>();
+        counts.forEach((key, value) -> {
+            if (value[0] > 0) result.add(new UnreadCountDTO(key.kind(), key.ref(), value[0], value[1]));
+        });
+        return result;
+    }
+
+    private void increment(long ownerId, CounterKey key, Long messageId) {
+        long id = messageId != null ? messageId : 0L;
+        pendingByOwner.compute(ownerId, (owner, pending) -> {
+            Map<CounterKey, Pending> map = pending != null ? pending : new HashMap<>();
+            map.computeIfAbsent(key, k -> new Pending()).message(id);
+            return map;
+        });
+    }
+
+    private void runFlusher() {
+        while (running) {
+            try {
+                Thread.sleep(flushIntervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.warn("Unread counter flush failed", e);
+            }
+        }
+    }
+
+    void flush() {
+        Map<Long, Map<CounterKey, Pending>> drained = new HashMap<>();
+        for (Long ownerId : pendingByOwner.keySet()) {
+            pendingByOwner.computeIfPresent(ownerId, (id, pending) -> {
+                drained.put(id, pending);
+                return null;
+            });
+        }
+        if (drained.isEmpty()) return;
+
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> dmRecounts = new ArrayList<>();
+        List<Object[]> groupRecounts = new ArrayList<>();
+        drained.forEach((ownerId, pending) -> pending.forEach((key, change) -> {
+            upserts.add(new Object[] {ownerId, key.kind(), key.ref(), change.delta, change.lastMessageId,
+                    change.readUpTo, change.reset});
+            if (change.reset && change.ownerName != null) {
+                if (DM.equals(key.kind())) {
+                    dmRecounts.add(new Object[] {Message.conversationKey(change.ownerName, key.ref()),
+                            change.ownerName, ownerId, key.ref()});
+                } else {
+                    groupRecounts.add(new Object[] {Long.valueOf(key.ref()), change.ownerName, ownerId, key.ref()});
+                }
+            }
+        }));
+
+        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        try {
+            jdbcTemplate.batchUpdate(UPSERT, upserts);
+            if (!dmRecounts.isEmpty()) jdbcTemplate.batchUpdate(RECOUNT_DM, dmRecounts);
+            if (!groupRecounts.isEmpty()) jdbcTemplate.batchUpdate(RECOUNT_GROUP, groupRecounts);
+        } catch (RuntimeException e) {
+            transactionManager.rollback(status);
+            requeue(drained);
+            throw e;
+        }
+        try {
+            transactionManager.commit(status);
+        } catch (RuntimeException e) {
+            log.warn("Unread counter commit failed; dropping changes for {} users rather than risk applying them twice",
+                    drained.size());
+            throw e;
+        }
+    }
+
+    // Nothing was written: put the changes back under anything that arrived meanwhile and retry next round
+    private void requeue(Map<Long, Map<CounterKey, Pending>> drained) {
+        drained.forEach((ownerId, pending) -> pendingByOwner.compute(ownerId, (id, newer) -> {
+            if (newer == null) return pending;
+            pending.forEach((key, change) -> newer.merge(key, change, (later, earlier) -> later.after(earlier)));
+            return newer;
+        }));
+    }
+
+    private record CounterKey(String kind, String ref) {
+    }
+
+    // Change to one counter since the last flush; only mutated under the owner's compute
+    private static final class Pending {
+        long delta;
+        long lastMessageId;
+        long readUpTo;
+        boolean reset;
+        String ownerName;
+
+        void message(long messageId) {
+            delta++;
+            lastMessageId = Math.max(lastMessageId, messageId);
+        }
+
+        void read(String username, long upToId) {
+            ownerName = username;
+            readUpTo = Math.max(readUpTo, upToId);
+            delta = 0;
+            reset = true;
+        }
+
+        // This change happened after earlier; combine them as if they were one
+        Pending after(Pending earlier) {
+            if (!reset) {
+                delta += earlier.delta;
+                reset = earlier.reset;
+                ownerName = ownerName != null ? ownerName : earlier.ownerName;
+            }
+            lastMessageId = Math.max(lastMessageId, earlier.lastMessageId);
+            readUpTo = Math.max(readUpTo, earlier.readUpTo);
+            return this;
+        }
+    }
+}
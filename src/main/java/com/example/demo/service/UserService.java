@@ -1,5 +1,8 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.cache.UserIdCache;
+import com.example.demo.config.JwtVerifier;
 import com.example.demo.dto.LoginRequest;
 import com.example.demo.dto.LoginResponse;
 import com.example.demo.entity.FriendRequest;
@@ -9,59 +12,109 @@ import com.example.demo.repository.UserRepository;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import java.util.List;
-import org.springframework.beans.factory.annotation.Value;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-
-import javax.crypto.SecretKey;
 
 import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import com.example.demo.dto.RegisterRequest;
 
 @Service
 public class UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private FriendRequestRepository friendRequestRepository;
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
+    @Autowired
+    private FriendshipCache friendshipCache;
 
-    private SecretKey secretKey;
+    @Autowired
+    private JwtVerifier jwtVerifier;
+
+    @Autowired
+    private UserIdCache userIdCache;
+
+    @Value("${chat.password.save-threads:2}")
+    private int saveThreads;
+
+    // What follows a hash (saving the user, upgrading the stored hash, signing the token) runs
+    // here, so the PasswordHasher pool only ever hashes. Deliberately not a bean: Boot would
+    // otherwise pick it up as the application's task executor
+    private ThreadPoolTaskExecutor afterHashExecutor;
 
     @PostConstruct
-    private void initSecretKey() {
-        this.secretKey = new SecretKeySpec(jwtSecret.getBytes(StandardCharsets.UTF_8), SignatureAlgorithm.HS256.getJcaName());
+    void start() {
+        afterHashExecutor = new ThreadPoolTaskExecutor();
+        afterHashExecutor.setCorePoolSize(Math.max(1, saveThreads));
+        afterHashExecutor.setThreadNamePrefix("password-save-");
+        afterHashExecutor.setTaskDecorator(UserService::withMdc);
+        afterHashExecutor.initialize();
     }
 
-    public SecretKey getSecretKey() {
-        return secretKey;
+    @PreDestroy
+    void stop() {
+        afterHashExecutor.shutdown();
     }
-    public User registerUser(RegisterRequest registerRequest) {
-        System.out.println("📝 Attempting to register user: " + registerRequest.getUsername());
-    
+
+    // Tasks are handed over on the hashing thread, which carries the request's MDC
+    private static Runnable withMdc(Runnable task) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            if (mdc != null) MDC.setContextMap(mdc);
+            try {
+                task.run();
+            } finally {
+                MDC.clear();
+            }
+        };
+    }
+
+    // Credentials as read before a login hash, without going through the request's EntityManager
+    private record StoredPassword(long id, String username, String hash) {
+    }
+
+    // The lookups before a hash go through JdbcTemplate rather than the repository: with
+    // open-in-view the request's EntityManager would keep its connection until the response is
+    // written, so every request waiting on the hashing pool would hold one while the save or
+    // hash upgrade after it needed another, and a burst of logins would drain the pool
+    private boolean taken(String sql, String value) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, value));
+    }
+
+    // Hashing runs on the PasswordHasher pool; the user is saved on afterHashExecutor once it completes
+    public CompletableFuture<User> registerUser(RegisterRequest registerRequest) {
         // Check if username exists
-        if (userRepository.findByUsername(registerRequest.getUsername()).isPresent()) {
-            System.out.println("❌ Username already exists: " + registerRequest.getUsername());
-            throw new RuntimeException("Username already exists");
+        if (taken("SELECT EXISTS (SELECT 1 FROM users WHERE username = ?)", registerRequest.getUsername())) {
+            log.info("Registration rejected, username {} already exists", registerRequest.getUsername());
+            return CompletableFuture.failedFuture(new RuntimeException("Username already exists"));
         }
     
         // Check if email exists
-        if (userRepository.findByEmail(registerRequest.getEmail()).isPresent()) {
-            System.out.println("❌ Email already exists: " + registerRequest.getEmail());
-            throw new RuntimeException("Email already exists");
+        if (taken("SELECT EXISTS (SELECT 1 FROM users WHERE email = ?)", registerRequest.getEmail())) {
+            log.info("Registration rejected for {}, email already in use", registerRequest.getUsername());
+            return CompletableFuture.failedFuture(new RuntimeException("Email already exists"));
         }
     
         // Create a new User entity from the DTO
@@ -69,43 +122,50 @@ public class UserService {
         user.setUsername(registerRequest.getUsername());
         user.setEmail(registerRequest.getEmail());
         
-        // Hash password
-        System.out.println("🔑 Hashing password...");
-        user.setPassword(passwordEncoder.encode(registerRequest.getPassword()));
-    
-        // Save user
-        User savedUser = userRepository.save(user);
-        System.out.println("✅ User successfully registered: " + savedUser.getId());
-    
-        return savedUser;
+        return passwordHasher.encode(registerRequest.getPassword()).thenApplyAsync(hash -> {
+            user.setPassword(hash);
+            User savedUser = userRepository.save(user);
+            // Clears a cached miss, so frames naming the new user work straight away
+            userIdCache.remember(savedUser);
+            log.info("Registered user {} with id {}", savedUser.getUsername(), savedUser.getId());
+            return savedUser;
+        }, afterHashExecutor);
     }
 
-    public LoginResponse loginUser(LoginRequest loginRequest) {
-        System.out.println("🔍 Checking user: " + loginRequest.getUsername());
-    
-        Optional<User> userOptional = userRepository.findByUsername(loginRequest.getUsername());
-        if (userOptional.isEmpty()) {
-            System.out.println("❌ User not found in database");
-            throw new RuntimeException("User not found");
+    public CompletableFuture<LoginResponse> loginUser(LoginRequest loginRequest) {
+        Optional<StoredPassword> stored = jdbcTemplate.query("SELECT id, username, password FROM users WHERE username = ?",
+                (rs, row) -> new StoredPassword(rs.getLong("id"), rs.getString("username"), rs.getString("password")),
+                loginRequest.getUsername()).stream().findFirst();
+        if (stored.isEmpty()) {
+            log.info("Login failed for {}: unknown user", loginRequest.getUsername());
+            return CompletableFuture.failedFuture(new RuntimeException("User not found"));
         }
     
-        User user = userOptional.get();
-        System.out.println("✅ User found: " + user.getUsername());
+        StoredPassword user = stored.get();
+        String storedHash = user.hash();
     
-        if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
-            System.out.println("❌ Incorrect password");
-            throw new RuntimeException("Invalid password");
-        }
+        return passwordHasher.verify(loginRequest.getPassword(), storedHash).thenApplyAsync(verification -> {
+            if (!verification.matches()) {
+                log.info("Login failed for {}: wrong password", user.username());
+                throw new RuntimeException("Invalid password");
+            }
+            if (verification.upgradedHash() != null) {
+                // Guarded on the old hash so a concurrent password change wins
+                int updated = jdbcTemplate.update("UPDATE users SET password = ? WHERE id = ? AND password = ?",
+                        verification.upgradedHash(), user.id(), storedHash);
+                if (updated == 1) log.info("Upgraded password hash for {}", user.username());
+            }
     
-        System.out.println("✅ Password matches. Generating token...");
-        String token = Jwts.builder()
-                .setSubject(user.getUsername())
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + 86400000)) // 1 day
-                .signWith(secretKey, SignatureAlgorithm.HS256) // ✅ not deprecated
-                .compact();
+            log.debug("Login succeeded for {}", user.username());
+            String token = Jwts.builder()
+                    .setSubject(user.username())
+                    .setIssuedAt(new Date())
+                    .setExpiration(new Date(System.currentTimeMillis() + 86400000)) // 1 day
+                    .signWith(jwtVerifier.getSecretKey(), SignatureAlgorithm.HS256) // ✅ not deprecated
+                    .compact();
     
-        return new LoginResponse(token);
+            return new LoginResponse(token);
+        }, afterHashExecutor);
     }
 
     public void sendFriendRequest(String senderUsername, String receiverUsername) {
@@ -149,6 +209,8 @@ public class UserService {
 
         userRepository.save(receiver);
         userRepository.save(sender);
+
+        friendshipCache.friendshipAdded(receiver, sender);
     }
 
     public void rejectFriendRequest(String receiverUsername, String senderUsername) {
@@ -177,6 +239,8 @@ public class UserService {
 
         userRepository.save(user);
         userRepository.save(friend);
+
+        friendshipCache.friendshipRemoved(user, friend);
     }
     public List<String> findAllFriends(String username) {
         User user = userRepository.findByUsername(username)
@@ -0,0 +1,99 @@
+package com.example.demo.broker;
+
+import com.example.demo.dto.GroupMessageWireDTO;
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.service.GroupMessagePublisher;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// One group message through SimpMessagingTemplate into the simple broker and out to every
+// subscriber's outbound channel: convertAndSend of the wire DTO, which converts per call, against
+// GroupMessagePublisher's single pre-encoded payload. Channels are synchronous, so each call
+// includes the whole fan-out; the outbound side only counts what it is handed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertAndSendBenchmark {
+
+    private static final String DESTINATION = "/topic/group/42";
+
+    @Param({"1", "50", "500"})
+    public int subscribers;
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate template;
+    private GroupMessagePublisher publisher;
+    private GroupMessage message;
+    private final LongAdder delivered = new LongAdder();
+
+    @Setup
+    public void setUp() {
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(m -> delivered.increment());
+
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic", "/queue"));
+        broker.start();
+        for (int i = 0; i < subscribers; i++) {
+            broker.handleMessage(subscribe("session-" + i));
+        }
+
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(mapper);
+        template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(converter);
+        publisher = new GroupMessagePublisher(template, mapper);
+
+        ChatGroup group = new ChatGroup();
+        group.setId(42L);
+        message = new GroupMessage();
+        message.setId(7_654_321L);
+        message.setSender("alice_w");
+        message.setContent("Trailhead at 8, bring water and something warm for the summit.");
+        message.setTimestamp(LocalDateTime.of(2025, 4, 12, 18, 30, 15));
+        message.setGroup(group);
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public void convertAndSend() {
+        template.convertAndSend(DESTINATION, GroupMessageWireDTO.from(message));
+    }
+
+    @Benchmark
+    public void preEncoded() {
+        publisher.publish(message);
+    }
+
+    private static Message<byte[]> subscribe(String session) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(session);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination(DESTINATION);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
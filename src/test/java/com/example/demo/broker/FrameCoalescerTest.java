@@ -0,0 +1,149 @@
+package com.example.demo.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class FrameCoalescerTest {
+
+	private static final String FRAME = "MESSAGE\ndestination:/topic/group/1\n\n{}\u0000";
+
+	private final FrameCoalescer coalescer = new FrameCoalescer(50_000, 1024, 1, 200, 512 * 1024);
+
+	@AfterEach
+	void tearDown() {
+		coalescer.destroy();
+	}
+
+	private WebSocketSession decorate(WebSocketSession raw) throws Exception {
+		AtomicReference<WebSocketSession> decorated = new AtomicReference<>();
+		WebSocketHandler handler = mock(WebSocketHandler.class);
+		doAnswer(call -> {
+			decorated.set(call.getArgument(0));
+			return null;
+		}).when(handler).afterConnectionEstablished(any());
+		coalescer.decorate(handler).afterConnectionEstablished(raw);
+		return decorated.get();
+	}
+
+	private static List<String> sent(WebSocketSession raw, int times) throws Exception {
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<WebSocketMessage<?>> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+		verify(raw, timeout(1000).times(times)).sendMessage(captor.capture());
+		return captor.getAllValues().stream().map(m -> ((TextMessage) m).getPayload()).toList();
+	}
+
+	@Test
+	void messageFramesWithinWindowGoOutTogether() throws Exception {
+		WebSocketSession raw = mock(WebSocketSession.class);
+		when(raw.isOpen()).thenReturn(true);
+		WebSocketSession session = decorate(raw);
+
+		for (int i = 0; i < 3; i++) session.sendMessage(new TextMessage(FRAME));
+		verify(raw, never()).sendMessage(any());
+
+		assertEquals(List.of(FRAME.repeat(3)), sent(raw, 1));
+	}
+
+	@Test
+	void otherFramesFlushPendingFirst() throws Exception {
+		WebSocketSession raw = mock(WebSocketSession.class);
+		when(raw.isOpen()).thenReturn(true);
+		WebSocketSession session = decorate(raw);
+
+		session.sendMessage(new TextMessage(FRAME));
+		session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n\u0000"));
+
+		assertEquals(List.of(FRAME, "RECEIPT\nreceipt-id:1\n\n\u0000"), sent(raw, 2));
+	}
+
+	@Test
+	void byteBudgetFlushesImmediately() throws Exception {
+		WebSocketSession raw = mock(WebSocketSession.class);
+		when(raw.isOpen()).thenReturn(true);
+		WebSocketSession session = decorate(raw);
+
+		int perBatch = 1024 / FRAME.length() + 1;
+		for (int i = 0; i < perBatch; i++) session.sendMessage(new TextMessage(FRAME));
+
+		verify(raw).sendMessage(any());
+	}
+
+	@Test
+	void byteBudgetCountsEncodedBytes() throws Exception {
+		WebSocketSession raw = mock(WebSocketSession.class);
+		when(raw.isOpen()).thenReturn(true);
+		WebSocketSession session = decorate(raw);
+
+		// 400 characters, but 1200 bytes of UTF-8
+		session.sendMessage(new TextMessage("MESSAGE\n\n" + "\u4f60".repeat(400) + "\u0000"));
+
+		verify(raw).sendMessage(any());
+	}
+
+	@Test
+	void closesASessionWhoseWriteExceedsTheSendTimeLimit() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		WebSocketSession raw = mock(WebSocketSession.class);
+		when(raw.isOpen()).thenReturn(true);
+		doAnswer(call -> {
+			release.await();
+			return null;
+		}).when(raw).sendMessage(any());
+		WebSocketSession session = decorate(raw);
+
+		// The window's flush blocks in the write; a later frame finds it stuck past the limit
+		session.sendMessage(new TextMessage(FRAME));
+		verify(raw, timeout(1000)).sendMessage(any());
+		Thread.sleep(300);
+		try {
+			SessionLimitExceededException e = assertThrows(SessionLimitExceededException.class,
+					() -> session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n\u0000")));
+			assertEquals(CloseStatus.SESSION_NOT_RELIABLE, e.getStatus());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	void takesTheSendLimitsOverFromTheTransport() {
+		var registration = new WebSocketTransportRegistration() {
+			int timeLimit() {
+				return getSendTimeLimit();
+			}
+
+			int bufferLimit() {
+				return getSendBufferSizeLimit();
+			}
+		};
+		registration.setSendTimeLimit(200);
+		registration.setSendBufferSizeLimit(512 * 1024);
+
+		coalescer.register(registration);
+
+		assertEquals(Integer.MAX_VALUE, registration.timeLimit());
+		assertEquals(Integer.MAX_VALUE, registration.bufferLimit());
+	}
+
+	@Test
+	void utf8LengthMatchesTheEncoder() {
+		String text = "a\u00e9\u4f60\ud83d\ude00";
+		assertEquals(text.getBytes(StandardCharsets.UTF_8).length, FrameCoalescer.utf8Length(text));
+	}
+}
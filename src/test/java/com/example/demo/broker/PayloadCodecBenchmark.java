@@ -0,0 +1,68 @@
+package com.example.demo.broker;
+
+import com.example.demo.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+// Bytes and CPU per chat message for each STOMP payload codec. Sizes, raw and after
+// permessage-deflate of a single message, are printed once per trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCodecBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    public String codec;
+
+    private ObjectMapper mapper;
+    private Message message;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = switch (codec) {
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        message = Message.builder()
+                .id(1_234_567L)
+                .sender("alice_w")
+                .receiver("bob_the_builder")
+                .content("On my way, be there in ten minutes. Grab a table by the window if you can?")
+                .timestamp(LocalDateTime.of(2025, 4, 12, 18, 30, 15))
+                .build();
+        encoded = mapper.writeValueAsBytes(message);
+        System.out.printf("%n%s: %d bytes, %d bytes deflated%n", codec, encoded.length, deflatedSize(encoded));
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        return mapper.readValue(encoded, Message.class);
+    }
+
+    // What permessage-deflate sends for this message on a fresh context (no takeover)
+    private static int deflatedSize(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(payload);
+        byte[] out = new byte[payload.length + 64];
+        int size = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        // The trailing empty block is stripped on the wire
+        return size - 4;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.demo.broker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PayloadCodecNegotiatorTest {
+
+	private static final byte[] JSON = "{\"sender\":\"alice\",\"content\":\"hi\",\"id\":7}".getBytes(StandardCharsets.UTF_8);
+
+	private final PayloadCodecNegotiator negotiator = new PayloadCodecNegotiator();
+
+	private void connect(String sessionId, String codec) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+		accessor.setSessionId(sessionId);
+		if (codec != null) accessor.setNativeHeader(PayloadCodecNegotiator.CODEC_HEADER, codec);
+		accessor.setLeaveMutable(true);
+		negotiator.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), mock(MessageChannel.class));
+	}
+
+	private Message<?> deliver(String sessionId, byte[] payload) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(sessionId);
+		accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+		return negotiator.preSend(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()), mock(MessageChannel.class));
+	}
+
+	@Test
+	void transcodesForSessionsThatAskedForCbor() throws Exception {
+		connect("s1", "cbor");
+
+		Message<?> out = deliver("s1", JSON);
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(out);
+
+		assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, headers.getContentType());
+		assertEquals("cbor", headers.getFirstNativeHeader(PayloadCodecNegotiator.CODEC_HEADER));
+		assertEquals(new ObjectMapper().readValue(JSON, Map.class), new CBORMapper().readValue((byte[]) out.getPayload(), Map.class));
+		assertSame(out.getPayload(), deliver("s1", JSON).getPayload());
+	}
+
+	@Test
+	void leavesOtherSessionsAsJson() {
+		connect("s2", null);
+		connect("s3", "xml");
+
+		assertSame(JSON, deliver("s2", JSON).getPayload());
+		assertSame(JSON, deliver("s3", JSON).getPayload());
+	}
+}
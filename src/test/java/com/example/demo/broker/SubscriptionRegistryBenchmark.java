@@ -0,0 +1,109 @@
+package com.example.demo.broker;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Subscribe/unsubscribe/publish-lookup throughput of the simple broker's default registry
+// against ShardedSubscriptionRegistry, with the destination mix this app uses
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class SubscriptionRegistryBenchmark {
+
+    private static final int USERS = 20_000;
+    private static final int GROUPS = 500;
+
+    @Param({"simple", "sharded"})
+    public String registry;
+
+    private SubscriptionRegistry subscriptions;
+    private Message<?>[] publishes;
+    private final AtomicLong churnSessions = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        subscriptions = registry.equals("sharded")
+                ? new ShardedSubscriptionRegistry(Runtime.getRuntime().availableProcessors())
+                : new DefaultSubscriptionRegistry();
+
+        // Every user watches their DM topic and three groups: 80k subscriptions in total
+        for (int user = 0; user < USERS; user++) {
+            String session = "session-" + user;
+            subscriptions.registerSubscription(subscribe(session, "dm", "/topic/messages/user" + user));
+            for (int g = 0; g < 3; g++) {
+                int group = (user * 7 + g * 131) % GROUPS;
+                subscriptions.registerSubscription(subscribe(session, "group" + g, "/topic/group/" + group));
+            }
+        }
+
+        publishes = new Message<?>[1024];
+        for (int i = 0; i < publishes.length; i++) {
+            String destination = i % 4 == 0
+                    ? "/topic/group/" + (i % GROUPS)
+                    : "/topic/messages/user" + (i * 31 % USERS);
+            publishes[i] = publish(destination);
+        }
+    }
+
+    @Benchmark
+    public Object publish() {
+        Message<?> message = publishes[ThreadLocalRandom.current().nextInt(publishes.length)];
+        return subscriptions.findSubscriptions(message);
+    }
+
+    @Benchmark
+    public void subscribeAndUnsubscribe() {
+        String session = "churn-" + churnSessions.incrementAndGet();
+        String destination = "/topic/group/" + ThreadLocalRandom.current().nextInt(GROUPS);
+        subscriptions.registerSubscription(subscribe(session, "sub", destination));
+        subscriptions.unregisterSubscription(unsubscribe(session, "sub"));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public Object mixedPublish() {
+        return publish();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedChurn() {
+        subscribeAndUnsubscribe();
+    }
+
+    private static Message<?> subscribe(String session, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(session);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<?> unsubscribe(String session, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(session);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<?> publish(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
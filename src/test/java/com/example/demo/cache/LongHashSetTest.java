@@ -0,0 +1,32 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+	@Test
+	void containsOnlyAddedValues() {
+		LongHashSet set = LongHashSet.of(3, 17, 42, 17);
+
+		assertEquals(3, set.size());
+		assertTrue(set.contains(42));
+		assertFalse(set.contains(0));
+		assertFalse(set.contains(5));
+	}
+
+	@Test
+	void withAndWithoutReturnCopies() {
+		LongHashSet original = LongHashSet.of(1, 2);
+		LongHashSet added = original.with(0).with(1000);
+		LongHashSet removed = added.without(2);
+
+		assertFalse(original.contains(1000));
+		assertTrue(added.contains(0));
+		assertEquals(4, added.size());
+		assertFalse(removed.contains(2));
+		assertEquals(3, removed.size());
+		assertSame(removed, removed.without(99));
+	}
+}
@@ -0,0 +1,94 @@
+package com.example.demo.cache;
+
+import com.example.demo.broker.ClusterCacheBus;
+import com.example.demo.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// The authorization checks every DM and group send makes, against warm caches: username to id,
+// then a probe of the friend or member set. Both a member and a non-member are checked
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipCheckBenchmark {
+
+    private static final long GROUP_ID = 42L;
+
+    @Param({"200"})
+    public int friends;
+
+    @Param({"500"})
+    public int members;
+
+    private FriendshipCache friendshipCache;
+    private GroupMembershipIndex membershipIndex;
+    private String friend, stranger, member, nonMember;
+
+    @Setup
+    public void setUp() {
+        // user_0 is the sender; user_1..n are its friends and the group's members
+        UserRepository users = (UserRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findIdByUsername" -> Optional.of(Long.parseLong(((String) args[0]).substring(5)));
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+                int count = sql.contains("user_friends") ? friends : members;
+                List<Long> ids = new ArrayList<>(count);
+                for (long id = 1; id <= count; id++) ids.add(id);
+                return (List<T>) ids;
+            }
+        };
+
+        UserIdCache userIdCache = new UserIdCache(users, 100_000, 5_000);
+        var bus = new StaticListableBeanFactory().getBeanProvider(ClusterCacheBus.class);
+        friendshipCache = new FriendshipCache(userIdCache, jdbcTemplate, bus, 100_000);
+        membershipIndex = new GroupMembershipIndex(userIdCache, jdbcTemplate, bus);
+
+        friend = "user_" + (friends / 2);
+        stranger = "user_" + (friends + 1);
+        member = "user_" + (members / 2);
+        nonMember = "user_" + (members + 1);
+
+        // Warm every cache the checks below touch
+        areFriends();
+        notFriends();
+        isMember();
+        notMember();
+    }
+
+    @Benchmark
+    public boolean areFriends() {
+        return friendshipCache.areFriends("user_0", friend);
+    }
+
+    @Benchmark
+    public boolean notFriends() {
+        return friendshipCache.areFriends("user_0", stranger);
+    }
+
+    @Benchmark
+    public boolean isMember() {
+        return membershipIndex.isMember(GROUP_ID, member);
+    }
+
+    @Benchmark
+    public boolean notMember() {
+        return membershipIndex.isMember(GROUP_ID, nonMember);
+    }
+}
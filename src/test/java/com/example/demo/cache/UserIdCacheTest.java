@@ -0,0 +1,57 @@
+package com.example.demo.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.repository.UserRepository;
+
+class UserIdCacheTest {
+
+	private final UserRepository userRepository = mock(UserRepository.class);
+
+	@Test
+	void looksUpAnUnknownNameOnceUntilItsMissExpires() throws Exception {
+		when(userRepository.findIdByUsername("mallory")).thenReturn(Optional.empty());
+		UserIdCache cache = new UserIdCache(userRepository, 1000, 50);
+
+		for (int i = 0; i < 100; i++) assertNull(cache.userId("mallory"));
+		verify(userRepository, times(1)).findIdByUsername("mallory");
+
+		Thread.sleep(60);
+		assertNull(cache.userId("mallory"));
+		verify(userRepository, times(2)).findIdByUsername("mallory");
+	}
+
+	@Test
+	void rememberingANewUserClearsItsMiss() {
+		when(userRepository.findIdByUsername("dave")).thenReturn(Optional.empty());
+		UserIdCache cache = new UserIdCache(userRepository, 1000, 60_000);
+		assertNull(cache.userId("dave"));
+
+		cache.remember(4L, "dave");
+
+		assertEquals(4L, cache.userId("dave"));
+		verify(userRepository, times(1)).findIdByUsername("dave");
+	}
+
+	@Test
+	void startsOverOnceFull() {
+		for (long id = 0; id < 20; id++) {
+			when(userRepository.findIdByUsername("user" + id)).thenReturn(Optional.of(id));
+		}
+		UserIdCache cache = new UserIdCache(userRepository, 10, 60_000);
+
+		for (long id = 0; id < 20; id++) cache.userId("user" + id);
+		// user0 was dropped when the map filled up, so it is looked up again
+		assertEquals(0L, cache.userId("user0"));
+		verify(userRepository, times(2)).findIdByUsername("user0");
+	}
+}
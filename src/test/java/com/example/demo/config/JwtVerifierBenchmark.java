@@ -0,0 +1,47 @@
+package com.example.demo.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Cost of authenticating one request in JwtAuthFilter: a full parse and HMAC check, as every
+// request paid before the verified-token cache, against a repeat token served from the cache
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerifierBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private JwtVerifier verifier;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        verifier = new JwtVerifier(SECRET, 10_000, new SimpleMeterRegistry());
+        token = Jwts.builder()
+                .setSubject("alice_w")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(10)))
+                .signWith(verifier.getSecretKey(), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    @Benchmark
+    public String parseAndVerify() {
+        return Jwts.parserBuilder().setSigningKey(verifier.getSecretKey()).build()
+                .parseClaimsJws(token).getBody().getSubject();
+    }
+
+    @Benchmark
+    public String cachedVerify() {
+        return verifier.verify(token);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.config;
+
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtVerifierTest {
+
+	private final JwtVerifier verifier = new JwtVerifier("TestSecretKeyThatIsLongEnoughForHs256!!", 2, new SimpleMeterRegistry());
+
+	private String token(String username, long expiresInMillis) {
+		return Jwts.builder()
+				.setSubject(username)
+				.setExpiration(new Date(System.currentTimeMillis() + expiresInMillis))
+				.signWith(verifier.getSecretKey(), SignatureAlgorithm.HS256)
+				.compact();
+	}
+
+	@Test
+	void verifiesAndRepeatsFromCache() {
+		String token = token("alice", 60_000);
+
+		assertEquals("alice", verifier.verify(token));
+		assertEquals("alice", verifier.verify(token));
+	}
+
+	@Test
+	void rejectsTamperedAndExpiredTokens() {
+		String token = token("alice", 60_000);
+		verifier.verify(token);
+		String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+		assertThrows(JwtException.class, () -> verifier.verify(tampered));
+		assertThrows(JwtException.class, () -> verifier.verify(token("bob", -1_000)));
+	}
+
+	@Test
+	void staysCorrectPastCapacity() {
+		for (String user : new String[] {"a", "b", "c", "d"}) {
+			assertEquals(user, verifier.verify(token(user, 60_000)));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.example.demo.config;
+
+import com.example.demo.entity.Message;
+import com.example.demo.persistence.DurabilityMode;
+import com.example.demo.persistence.MessageWritePipeline;
+import com.example.demo.service.ConversationSummaryService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Time for one message from each of N connections to get through MessageWritePipeline.write, the
+// call a STOMP send blocks in, on the default channel pool (2 x cores, as Spring sizes it) against
+// one virtual thread per frame. The pipeline runs against an embedded Postgres through a pool of
+// the app's default size: in FLUSH mode each caller waits for its batch to commit, so the number
+// of callers that can wait at once decides how full the batches get; in JOURNAL mode callers
+// queue on the journal lock instead. Needs Java 21 for the virtual case.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"1000", "10000"})
+    public int connections;
+
+    @Param({"FLUSH", "JOURNAL"})
+    public DurabilityMode durability;
+
+    private EmbeddedPostgres postgres;
+    private HikariDataSource dataSource;
+    private Path journalDir;
+    private MessageWritePipeline pipeline;
+    private Executor executor;
+    private ThreadPoolTaskExecutor pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        dataSource.setMaximumPoolSize(10);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE message (id BIGSERIAL PRIMARY KEY, sender VARCHAR(255), " +
+                "receiver VARCHAR(255), content TEXT, timestamp TIMESTAMP, conversation_key VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE group_messages (id BIGSERIAL PRIMARY KEY, sender VARCHAR(255), " +
+                "content TEXT, timestamp TIMESTAMP, group_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE conversation_summaries (id BIGSERIAL PRIMARY KEY, owner VARCHAR(255), " +
+                "partner VARCHAR(255), last_message_id BIGINT, last_sender VARCHAR(255), last_content TEXT, " +
+                "last_timestamp TIMESTAMP, UNIQUE (owner, partner))");
+
+        ConversationSummaryService summaries = new ConversationSummaryService();
+        ReflectionTestUtils.setField(summaries, "jdbcTemplate", jdbcTemplate);
+
+        journalDir = Files.createTempDirectory("bench-journal-");
+        pipeline = new MessageWritePipeline(jdbcTemplate, summaries);
+        ReflectionTestUtils.setField(pipeline, "durability", durability);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 256);
+        ReflectionTestUtils.setField(pipeline, "maxDelayMs", 5L);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 10_000);
+        ReflectionTestUtils.setField(pipeline, "enqueueTimeoutMs", 5_000L);
+        ReflectionTestUtils.setField(pipeline, "journalDir", journalDir.toString());
+        ReflectionTestUtils.setField(pipeline, "journalSegmentSizeMb", 64);
+        ReflectionTestUtils.invokeMethod(pipeline, "start");
+
+        if (threads.equals("virtual")) {
+            executor = new VirtualThreadTaskExecutor("bench-virtual-");
+        } else {
+            pool = new ThreadPoolTaskExecutor();
+            pool.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+            pool.setAllowCoreThreadTimeOut(true);
+            pool.setThreadNamePrefix("bench-platform-");
+            pool.initialize();
+            executor = pool;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (pool != null) pool.shutdown();
+        ReflectionTestUtils.invokeMethod(pipeline, "stop");
+        dataSource.close();
+        postgres.close();
+        FileSystemUtils.deleteRecursively(journalDir);
+    }
+
+    @Benchmark
+    public void oneMessagePerConnection() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            String sender = "user_" + i;
+            String receiver = "friend_" + i % 50;
+            executor.execute(() -> {
+                try {
+                    pipeline.write(Message.builder()
+                            .sender(sender)
+                            .receiver(receiver)
+                            .content("hello")
+                            .timestamp(LocalDateTime.now())
+                            .build());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
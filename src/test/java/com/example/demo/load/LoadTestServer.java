@@ -0,0 +1,48 @@
+package com.example.demo.load;
+
+import com.example.demo.DemoApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * Starts the application with the loadtest profile on a throwaway Postgres, so
+ * StompLoadGenerator can run on one box without a database server installed. The embedded
+ * instance is real Postgres (partitions, tsvector search and ON CONFLICT upserts all need it)
+ * in a temporary directory that is deleted on shutdown. Pass -Dspring.datasource.url to use
+ * an existing database instead.
+ */
+public class LoadTestServer {
+
+    public static void main(String[] args) throws IOException {
+        EmbeddedPostgres postgres = null;
+        if (System.getProperty("spring.datasource.url") == null) {
+            postgres = EmbeddedPostgres.builder().start();
+            // System properties outrank application.properties
+            System.setProperty("spring.datasource.url", postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true");
+            System.setProperty("spring.datasource.username", "postgres");
+            System.setProperty("spring.datasource.password", "");
+        }
+
+        SpringApplication application = new SpringApplication(DemoApplication.class);
+        application.setAdditionalProfiles("loadtest");
+        // Closed below, so the database outlives the context's own shutdown work
+        application.setRegisterShutdownHook(false);
+        ConfigurableApplicationContext context = application.run(args);
+
+        EmbeddedPostgres database = postgres;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            context.close();
+            if (database != null) {
+                try {
+                    database.close();
+                } catch (IOException e) {
+                    System.out.println("Could not stop embedded Postgres: " + e.getMessage());
+                }
+            }
+        }, "loadtest-shutdown"));
+        System.out.println("Load test server ready on port " + context.getEnvironment().getProperty("local.server.port"));
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.demo.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop STOMP load against a running instance (see LoadTestServer for one without an
+ * external Postgres). Registers a fresh set of users, makes each one friends with the next,
+ * creates groups, then connects one authenticated session per user subscribed to its DM topic
+ * and its groups, and sends to /app/chat and /app/group at fixed rates.
+ *
+ * Latency is taken from the time a message was scheduled to go out, not when it actually
+ * went, so a stalled server shows up in the percentiles instead of just lowering the send rate.
+ * Samples from the warmup period are discarded.
+ *
+ * Arguments are key=value: url, users, groups, group-size, dm-rate and group-rate (messages/s),
+ * duration and warmup (s), senders (threads), size (content bytes).
+ */
+public class StompLoadGenerator {
+
+    private static final String MARKER = "lt:";
+    private static final int MAX_RETRIES = 10;
+
+    private final Map<String, String> options;
+    private final String url;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    private final int userCount;
+    private final String[] usernames;
+    private final String[] tokens;
+    private final StompSession[] sessions;
+    private long[] groupIds;
+    private int[][] groupMembers;
+    private String padding;
+
+    private volatile Stats dm = new Stats();
+    private volatile Stats group = new Stats();
+    private volatile boolean running = true;
+
+    public StompLoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.url = option("url", "http://localhost:8080");
+        this.userCount = intOption("users", 100);
+        this.usernames = new String[userCount];
+        this.tokens = new String[userCount];
+        this.sessions = new StompSession[userCount];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value, got " + arg);
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new StompLoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        padding = "x".repeat(Math.max(0, intOption("size", 64) - 24));
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            long started = System.nanoTime();
+            setUp(pool);
+            System.out.printf("Set up %d users and %d groups in %d ms%n", userCount, groupIds.length,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            connect(pool);
+            drive();
+        } finally {
+            for (StompSession session : sessions) {
+                if (session != null && session.isConnected()) session.disconnect();
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    // Users, a ring of friendships (user i and i+1) and groups of consecutive users, all over REST
+    private void setUp(ExecutorService pool) throws Exception {
+        String run = Long.toString(System.currentTimeMillis() % 1_000_000_000L, 36);
+        for (int i = 0; i < userCount; i++) usernames[i] = "lt" + run + "_" + i;
+
+        // Registration and login each pay a BCrypt hash, so they go in parallel
+        parallel(pool, userCount, i -> {
+            post("/api/auth/register", Map.of("username", usernames[i], "password", "loadtest123",
+                    "email", usernames[i] + "@load.test"), null);
+            JsonNode login = post("/api/auth/login", Map.of("username", usernames[i], "password", "loadtest123"), null);
+            tokens[i] = login.get("token").asText();
+            return null;
+        });
+
+        // Accepting rewrites both users' friend sets, so these stay sequential
+        for (int i = 0; i < userCount; i++) {
+            int next = (i + 1) % userCount;
+            if (next == i) break;
+            send("POST", "/api/friends/request?senderUsername=" + encode(usernames[i])
+                    + "&receiverUsername=" + encode(usernames[next]), null, tokens[i]);
+            send("PUT", "/api/friends/accept?receiverUsername=" + encode(usernames[next])
+                    + "&senderUsername=" + encode(usernames[i]), null, tokens[next]);
+        }
+
+        int groups = intOption("groups", 10);
+        int groupSize = Math.min(intOption("group-size", 10), userCount);
+        groupIds = new long[groups];
+        groupMembers = new int[groups][groupSize];
+        for (int g = 0; g < groups; g++) {
+            List<String> members = new ArrayList<>();
+            for (int m = 0; m < groupSize; m++) {
+                groupMembers[g][m] = (g * groupSize + m) % userCount;
+                if (m > 0) members.add(usernames[groupMembers[g][m]]);
+            }
+            JsonNode created = post("/api/groups/create",
+                    Map.of("name", "load " + g, "memberUsernames", members), tokens[groupMembers[g][0]]);
+            groupIds[g] = created.get("id").asLong();
+        }
+    }
+
+    private void connect(ExecutorService pool) throws Exception {
+        ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+        heartbeats.setPoolSize(2);
+        heartbeats.setThreadNamePrefix("load-heartbeat-");
+        heartbeats.initialize();
+
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        // Payloads go out pre-encoded and come back as raw bytes
+        client.setMessageConverter(new SimpleMessageConverter());
+        client.setTaskScheduler(heartbeats);
+        client.setDefaultHeartbeat(new long[]{10_000, 10_000});
+
+        Map<Integer, List<Long>> groupsByUser = new HashMap<>();
+        for (int g = 0; g < groupIds.length; g++) {
+            for (int member : groupMembers[g]) {
+                groupsByUser.computeIfAbsent(member, k -> new ArrayList<>()).add(groupIds[g]);
+            }
+        }
+
+        String wsUrl = url.replaceFirst("^http", "ws") + "/ws";
+        parallel(pool, userCount, i -> {
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", "Bearer " + tokens[i]);
+            StompSession session = client.connectAsync(wsUrl, new WebSocketHttpHeaders(), connectHeaders,
+                    new StompSessionHandlerAdapter() {
+                    }).get(30, TimeUnit.SECONDS);
+
+            session.subscribe("/topic/messages/" + usernames[i], receiver(usernames[i], false));
+            for (Long groupId : groupsByUser.getOrDefault(i, List.of())) {
+                session.subscribe("/topic/group/" + groupId, receiver(usernames[i], true));
+            }
+            sessions[i] = session;
+            return null;
+        });
+        System.out.printf("Connected %d sessions%n", userCount);
+    }
+
+    private StompFrameHandler receiver(String username, boolean groupTopic) {
+        return new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                long now = System.nanoTime();
+                try {
+                    JsonNode message = mapper.readTree((byte[]) payload);
+                    // Senders also get their own messages back; only the recipients' copies count
+                    if (username.equals(message.path("sender").asText())) return;
+                    String content = message.path("content").asText();
+                    if (!content.startsWith(MARKER)) return;
+                    long scheduled = Long.parseLong(content.substring(MARKER.length(), content.indexOf(' ')));
+                    (groupTopic ? group : dm).delivered(TimeUnit.NANOSECONDS.toMicros(now - scheduled));
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Unreadable frame: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    private void drive() throws InterruptedException {
+        int duration = intOption("duration", 60);
+        int warmup = intOption("warmup", 10);
+        int senders = intOption("senders", 4);
+        double dmRate = doubleOption("dm-rate", 200);
+        double groupRate = doubleOption("group-rate", 20);
+        int groupSize = groupMembers.length == 0 ? 0 : groupMembers[0].length;
+
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < senders; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> send(start, offset, senders, dmRate / senders, groupRate / senders),
+                    "load-sender-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+
+        System.out.printf("Warming up for %d s%n", warmup);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+        dm = new Stats();
+        group = new Stats();
+        long measured = System.nanoTime();
+
+        for (int elapsed = 5; elapsed <= duration; elapsed += 5) {
+            Thread.sleep(5000);
+            System.out.printf("%3d s  dm sent %d delivered %d  group sent %d delivered %d%n", elapsed,
+                    dm.sent.sum(), dm.latency.count(), group.sent.sum(), group.latency.count());
+        }
+        running = false;
+        for (Thread thread : threads) thread.join();
+        double seconds = (System.nanoTime() - measured) / 1e9;
+
+        // Let in-flight messages arrive before counting what was lost
+        Thread.sleep(TimeUnit.SECONDS.toMillis(intOption("drain", 2)));
+        System.out.println();
+        dm.report("dm", 1, seconds);
+        group.report("group", groupSize - 1, seconds);
+    }
+
+    // One sender thread: DMs and group messages on their own fixed schedules, whichever is due
+    // first; each thread's schedule is offset so the senders together spread sends evenly
+    private void send(long start, int offset, int senders, double dmRate, double groupRate) {
+        long dmInterval = dmRate > 0 ? (long) (1e9 / dmRate) : Long.MAX_VALUE;
+        long groupInterval = groupRate > 0 && groupIds.length > 0 ? (long) (1e9 / groupRate) : Long.MAX_VALUE;
+        long nextDm = dmInterval == Long.MAX_VALUE ? Long.MAX_VALUE : start + dmInterval / senders * offset;
+        long nextGroup = groupInterval == Long.MAX_VALUE ? Long.MAX_VALUE : start + groupInterval / senders * offset;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (running) {
+            boolean isDm = nextDm <= nextGroup;
+            long scheduled = isDm ? nextDm : nextGroup;
+            if (scheduled == Long.MAX_VALUE) return;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            String content = MARKER + scheduled + " " + padding;
+            if (isDm) {
+                int from = random.nextInt(userCount);
+                int to = (from + 1) % userCount;
+                publish(from, "/app/chat", Map.of("receiver", usernames[to], "content", content));
+                dm.sent.increment();
+                nextDm += dmInterval;
+            } else {
+                int g = random.nextInt(groupIds.length);
+                int from = groupMembers[g][random.nextInt(groupMembers[g].length)];
+                publish(from, "/app/group", Map.of("groupId", groupIds[g], "content", content));
+                group.sent.increment();
+                nextGroup += groupInterval;
+            }
+        }
+    }
+
+    private void publish(int user, String destination, Map<String, Object> body) {
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination(destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        try {
+            byte[] payload = mapper.writeValueAsBytes(body);
+            StompSession session = sessions[user];
+            // A WebSocket session allows one writer at a time
+            synchronized (session) {
+                session.send(headers, payload);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Send failed: " + e.getMessage());
+        }
+    }
+
+    private JsonNode post(String path, Object body, String token) throws IOException, InterruptedException {
+        return mapper.readTree(send("POST", path, body, token));
+    }
+
+    private String send(String method, String path, Object body, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + path))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                .header("Content-Type", "application/json");
+        if (token != null) request.header("Authorization", "Bearer " + token);
+
+        // Registration and login answer 429 while the hashing queue is full, as it is on a cold start
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        for (int retry = 0; response.statusCode() == 429 && retry < MAX_RETRIES; retry++) {
+            long delaySeconds = response.headers().firstValueAsLong("Retry-After").orElse(1);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(delaySeconds));
+            response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(method + " " + path + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private interface Task {
+        Void call(int index) throws Exception;
+    }
+
+    private static void parallel(ExecutorService pool, int count, Task task) throws Exception {
+        List<Future<Void>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(pool.submit((Callable<Void>) () -> task.call(index)));
+        }
+        for (Future<Void> future : futures) future.get();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return Double.parseDouble(option(name, String.valueOf(defaultValue)));
+    }
+
+    private static final class Stats {
+        final LongAdder sent = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        void delivered(long micros) {
+            latency.record(micros);
+        }
+
+        void report(String name, int recipients, double seconds) {
+            long sent = this.sent.sum();
+            long delivered = latency.count();
+            System.out.printf("%-5s sent %d (%.1f/s)  delivered %d (%.1f/s)  missing %d%n", name,
+                    sent, sent / seconds, delivered, delivered / seconds, Math.max(0, sent * recipients - delivered));
+            System.out.printf("      latency ms  p50 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                    latency.percentile(0.5) / 1000.0, latency.percentile(0.99) / 1000.0,
+                    latency.percentile(0.999) / 1000.0, latency.max() / 1000.0);
+        }
+    }
+}
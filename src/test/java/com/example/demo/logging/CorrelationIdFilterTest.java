@@ -0,0 +1,39 @@
+package com.example.demo.logging;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CorrelationIdFilterTest {
+
+	private final TraceSampler traceSampler = mock(TraceSampler.class);
+	private final CorrelationIdFilter filter = new CorrelationIdFilter(traceSampler);
+
+	@Test
+	void keepsTheClientIdButSamplesOnItsOwn() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(CorrelationIdFilter.HEADER, "client-chosen-id");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		filter.doFilter(request, response, new MockFilterChain());
+
+		assertEquals("client-chosen-id", response.getHeader(CorrelationIdFilter.HEADER));
+		ArgumentCaptor<String> sampledOn = ArgumentCaptor.forClass(String.class);
+		verify(traceSampler).sampled(sampledOn.capture());
+		assertNotEquals("client-chosen-id", sampledOn.getValue());
+	}
+
+	@Test
+	void generatesAnIdWhenTheClientSendsNone() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		filter.doFilter(new MockHttpServletRequest(), response, new MockFilterChain());
+
+		assertNotNull(response.getHeader(CorrelationIdFilter.HEADER));
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.demo.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TraceSamplerTest {
+
+	@Test
+	void samplesRoughlyTheConfiguredFraction() {
+		TraceSampler sampler = new TraceSampler(0.1);
+		int sampled = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (sampler.sampled(UUID.randomUUID().toString())) sampled++;
+		}
+
+		assertTrue(sampled > 9_000 && sampled < 11_000, "sampled " + sampled);
+	}
+
+	@Test
+	void decisionIsStablePerId() {
+		TraceSampler sampler = new TraceSampler(0.5);
+		for (int i = 0; i < 1_000; i++) {
+			String id = Long.toHexString(i * 7919L);
+			assertEquals(sampler.sampled(id), sampler.sampled(id));
+		}
+	}
+
+	@Test
+	void zeroAndFullRates() {
+		assertFalse(new TraceSampler(0).sampled("abc"));
+		assertTrue(new TraceSampler(1).sampled("abc"));
+		assertFalse(new TraceSampler(1).sampled(null));
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.demo.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalIdAllocatorTest {
+
+	private static final YearMonth MAY = YearMonth.of(2024, 5);
+	private static final ZonedDateTime MAY_10 = ZonedDateTime.of(2024, 5, 10, 12, 0, 0, 0, ZoneOffset.UTC);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void handsOutIncreasingIdsInTheUpperHalfOfTheMonth() throws Exception {
+		try (LocalIdAllocator ids = new LocalIdAllocator(dir.resolve("ids"), 0)) {
+			long first = ids.nextId(MAY_10);
+			long second = ids.nextId(MAY_10);
+
+			assertTrue(second > first);
+			assertTrue(first >= MessagePartitions.monthStart(MAY) + (1L << 39));
+			assertTrue(second < MessagePartitions.monthStart(MAY.plusMonths(1)));
+		}
+	}
+
+	@Test
+	void interleavesIdsFromTwoNodesInSendOrder() throws Exception {
+		try (LocalIdAllocator node0 = new LocalIdAllocator(dir.resolve("ids-0"), 0);
+			 LocalIdAllocator node1 = new LocalIdAllocator(dir.resolve("ids-1"), 1)) {
+			long previous = 0;
+			for (int ms = 0; ms < 1000; ms++) {
+				ZonedDateTime now = MAY_10.plusNanos(ms * 1_000_000L);
+				// Node 1 sends on odd milliseconds only, node 0 on every one
+				long id = (ms % 2 == 1 ? node1 : node0).nextId(now);
+				assertTrue(id > previous, "id sent at +" + ms + " ms sorted before an earlier one");
+				previous = id;
+			}
+		}
+	}
+
+	@Test
+	void aBurstRunsAheadOfTheClockAndOtherNodesCatchUpOnceItEnds() throws Exception {
+		try (LocalIdAllocator busy = new LocalIdAllocator(dir.resolve("ids-0"), 0);
+			 LocalIdAllocator quiet = new LocalIdAllocator(dir.resolve("ids-1"), 1)) {
+			long last = 0;
+			for (int i = 0; i < 10 * LocalIdAllocator.TICKS_PER_MS; i++) last = busy.nextId(MAY_10);
+
+			// Still increasing on the busy node, and ten milliseconds later the quiet one sorts above it
+			assertTrue(busy.nextId(MAY_10) > last);
+			assertTrue(quiet.nextId(MAY_10.plusNanos(11_000_000L)) > busy.nextId(MAY_10));
+		}
+	}
+
+	@Test
+	void continuesAboveEveryIdHandedOutBeforeARestart() throws Exception {
+		long last;
+		try (LocalIdAllocator ids = new LocalIdAllocator(dir.resolve("ids"), 3)) {
+			last = ids.nextId(MAY_10);
+			for (int i = 0; i < 100_000; i++) last = ids.nextId(MAY_10);
+		}
+
+		// Even with the clock set back after the restart
+		try (LocalIdAllocator reopened = new LocalIdAllocator(dir.resolve("ids"), 3)) {
+			assertTrue(reopened.nextId(MAY_10.minusHours(1)) > last);
+		}
+	}
+
+	@Test
+	void startsEachMonthInItsOwnRange() throws Exception {
+		try (LocalIdAllocator ids = new LocalIdAllocator(dir.resolve("ids"), 0)) {
+			long may = ids.nextId(MAY_10);
+			long june = ids.nextId(MAY_10.plusMonths(1));
+
+			assertTrue(may < MessagePartitions.monthStart(MAY.plusMonths(1)));
+			assertTrue(june >= MessagePartitions.monthStart(MAY.plusMonths(1)) + (1L << 39));
+			assertTrue(june < MessagePartitions.monthStart(MAY.plusMonths(2)));
+		}
+	}
+
+	@Test
+	void rejectsNodeIdsAboveTheLast() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new LocalIdAllocator(dir.resolve("ids"), LocalIdAllocator.MAX_NODES));
+	}
+}
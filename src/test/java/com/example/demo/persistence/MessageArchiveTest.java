@@ -0,0 +1,123 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageArchiveTest {
+
+	@TempDir
+	Path dir;
+
+	MessageArchive archive;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		archive = new MessageArchive();
+		ReflectionTestUtils.setField(archive, "archiveDir", dir.toString());
+		archive.load();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		archive.close();
+	}
+
+	@Test
+	void pagesAcrossBlocksAndSegmentsInBothDirections() throws Exception {
+		// Two months of one conversation, the first one spanning several blocks
+		export("message_p2026_01", 1, 2500, 10_000);
+		export("message_p2026_02", 10_001, 10_100, 20_000);
+
+		assertEquals(20_000, archive.archivedBelow(MessageArchive.MESSAGES));
+
+		List<Message> newest = archive.conversationBefore("1:a:b", 10_050, 60);
+		assertEquals(60, newest.size());
+		assertEquals(10_049, newest.get(0).getId());
+		assertEquals(10_001, newest.get(48).getId());
+		assertEquals(2500, newest.get(49).getId());
+
+		List<Message> oldest = archive.conversationAfter("1:a:b", 1020, 10);
+		assertEquals(1021, oldest.get(0).getId());
+		assertEquals(1030, oldest.get(9).getId());
+		assertEquals("a", oldest.get(0).getSender());
+		assertEquals("message 1021", oldest.get(0).getContent());
+
+		assertTrue(archive.conversationBefore("1:a:c", Long.MAX_VALUE, 10).isEmpty());
+	}
+
+	@Test
+	void reloadsSegmentsAndDeletesExpiredOnes() throws Exception {
+		export("message_p2026_01", 1, 10, 100);
+		export("message_p2026_02", 101, 110, 200);
+
+		archive.close();
+		setUp();
+		assertEquals(200, archive.archivedBelow(MessageArchive.MESSAGES));
+
+		archive.deleteBelow(MessageArchive.MESSAGES, 100);
+		assertFalse(Files.exists(dir.resolve("message/message_p2026_01.seg")));
+		assertEquals(List.of(110L, 109L), archive.conversationBefore("1:a:b", Long.MAX_VALUE, 2)
+				.stream().map(Message::getId).toList());
+		assertTrue(archive.conversationAfter("1:a:b", 0, 20).stream().allMatch(m -> m.getId() > 100));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void aSegmentDroppedByRetentionStaysReadableUntilItsReadersFinish() throws Exception {
+		export("message_p2026_01", 1, 10, 100);
+		SegmentFile segment = ((List<SegmentFile>) ReflectionTestUtils.getField(archive, "messageSegments")).get(0);
+		assertTrue(segment.retain());
+
+		archive.deleteBelow(MessageArchive.MESSAGES, 100);
+		assertEquals(10, segment.read(segment.blocks("1:a:b").get(0)).size());
+
+		segment.release();
+		assertFalse(segment.retain());
+	}
+
+	@Test
+	void exportingAPartitionAgainReplacesItsSegment() throws Exception {
+		export("message_p2026_01", 1, 10, 100);
+		export("message_p2026_01", 1, 12, 100);
+
+		assertEquals(12, archive.conversationAfter("1:a:b", 0, 50).size());
+	}
+
+	@Test
+	void pagesGroupHistoryBackwards() throws Exception {
+		try (SegmentFile.Writer writer = archive.writer(MessageArchive.GROUP_MESSAGES, "group_messages_p2026_01")) {
+			for (long id = 1; id <= 30; id++) {
+				writer.append("7", new SegmentFile.Row(id, "a", null, "message " + id, null));
+			}
+			writer.finish(100);
+		}
+		archive.register(MessageArchive.GROUP_MESSAGES, "group_messages_p2026_01");
+
+		List<GroupMessage> page = archive.groupBefore(7L, 21, 5);
+		assertEquals(List.of(20L, 19L, 18L, 17L, 16L), page.stream().map(GroupMessage::getId).toList());
+		assertEquals(7L, page.get(0).getGroupId());
+	}
+
+	private void export(String partition, long firstId, long lastId, long upperBound) throws Exception {
+		try (SegmentFile.Writer writer = archive.writer(MessageArchive.MESSAGES, partition)) {
+			// Another conversation first, so keys are not simply one per file
+			writer.append("1:a:a", new SegmentFile.Row(firstId - 1, "a", "a", "note", null));
+			for (long id = firstId; id <= lastId; id++) {
+				writer.append("1:a:b", new SegmentFile.Row(id, "a", "b", "message " + id, 1_700_000_000_000L));
+			}
+			writer.finish(upperBound);
+		}
+		archive.register(MessageArchive.MESSAGES, partition);
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageJournalTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void replaysEverythingAfterTheCheckpointOnReopen() throws Exception {
+		long afterFirst;
+		try (MessageJournal journal = new MessageJournal(dir, 4096, false)) {
+			afterFirst = journal.append(directMessage(1, "first"));
+			journal.append(groupMessage(2, 7L, "second"));
+			journal.checkpoint(afterFirst);
+		}
+
+		try (MessageJournal reopened = new MessageJournal(dir, 4096, false)) {
+			List<MessageJournal.Entry> entries = reopened.readFrom(reopened.getCheckpoint(), 10);
+
+			assertEquals(afterFirst, reopened.getCheckpoint());
+			assertEquals(1, entries.size());
+			assertEquals(2L, entries.get(0).groupMessage.getId());
+			assertEquals(7L, entries.get(0).groupMessage.getGroupId());
+			assertEquals("second", entries.get(0).groupMessage.getContent());
+		}
+	}
+
+	@Test
+	void rollsOverToNewSegmentsAndDropsCheckpointedOnes() throws Exception {
+		try (MessageJournal journal = new MessageJournal(dir, 256, false)) {
+			long end = 0;
+			for (int i = 1; i <= 20; i++) {
+				end = journal.append(directMessage(i, "message number " + i));
+			}
+
+			List<MessageJournal.Entry> entries = journal.readFrom(0, 100);
+			assertEquals(20, entries.size());
+			assertEquals("alice", entries.get(19).message.getSender());
+			assertEquals(Message.conversationKey("alice", "bob"), entries.get(19).message.getConversationKey());
+
+			journal.checkpoint(end);
+			assertTrue(journal.readFrom(end, 100).isEmpty());
+		}
+	}
+
+	private static Message directMessage(long id, String content) {
+		return Message.builder()
+				.id(id)
+				.sender("alice")
+				.receiver("bob")
+				.content(content)
+				.timestamp(LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123456789))
+				.build();
+	}
+
+	private static GroupMessage groupMessage(long id, long groupId, String content) {
+		ChatGroup group = new ChatGroup();
+		group.setId(groupId);
+		GroupMessage message = new GroupMessage();
+		message.setId(id);
+		message.setGroup(group);
+		message.setSender("alice");
+		message.setContent(content);
+		message.setTimestamp(LocalDateTime.now());
+		return message;
+	}
+}
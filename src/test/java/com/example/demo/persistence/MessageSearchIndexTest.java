@@ -0,0 +1,53 @@
+package com.example.demo.persistence;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSearchIndexTest {
+
+	private EmbeddedPostgres postgres;
+	private JdbcTemplate jdbcTemplate;
+	private MessageSearchIndex index;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		postgres = EmbeddedPostgres.builder().start();
+		jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+		jdbcTemplate.execute("CREATE TABLE message (id BIGSERIAL PRIMARY KEY, content TEXT, conversation_key VARCHAR(255))");
+		jdbcTemplate.execute("CREATE TABLE group_messages (id BIGSERIAL PRIMARY KEY, content TEXT, group_id BIGINT)");
+		index = new MessageSearchIndex(jdbcTemplate);
+		ReflectionTestUtils.setField(index, "batchSize", 5000);
+		ReflectionTestUtils.setField(index, "pauseMs", 0L);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		ReflectionTestUtils.invokeMethod(index, "stop");
+		postgres.close();
+	}
+
+	private Boolean valid(String name) {
+		return jdbcTemplate.queryForObject(
+				"SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)", Boolean.class, name);
+	}
+
+	@Test
+	void rebuildsAnIndexLeftInvalidByAFailedConcurrentBuild() throws Exception {
+		index.install();
+		ReflectionTestUtils.invokeMethod(index, "stop");
+		// What a cancelled CREATE INDEX CONCURRENTLY leaves behind
+		jdbcTemplate.update("UPDATE pg_index SET indisvalid = false WHERE indexrelid = 'idx_message_search'::regclass");
+		assertFalse(valid("idx_message_search"));
+
+		index.install();
+
+		assertTrue(valid("idx_message_search"));
+		assertTrue(valid("idx_group_messages_search"));
+	}
+}
@@ -0,0 +1,80 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.Message;
+import com.example.demo.service.ConversationSummaryService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageWritePipelineEnqueueTest {
+
+	private EmbeddedPostgres postgres;
+	private HikariDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private MessageWritePipeline pipeline;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		postgres = EmbeddedPostgres.builder().start();
+		dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE message (id BIGSERIAL PRIMARY KEY, sender VARCHAR(255), " +
+				"receiver VARCHAR(255), content TEXT, timestamp TIMESTAMP, conversation_key VARCHAR(255))");
+		jdbcTemplate.execute("CREATE TABLE group_messages (id BIGSERIAL PRIMARY KEY, sender VARCHAR(255), " +
+				"content TEXT, timestamp TIMESTAMP, group_id BIGINT)");
+		jdbcTemplate.execute("CREATE TABLE conversation_summaries (id BIGSERIAL PRIMARY KEY, owner VARCHAR(255), " +
+				"partner VARCHAR(255), last_message_id BIGINT, last_sender VARCHAR(255), last_content TEXT, " +
+				"last_timestamp TIMESTAMP, UNIQUE (owner, partner))");
+
+		ConversationSummaryService summaries = new ConversationSummaryService();
+		ReflectionTestUtils.setField(summaries, "jdbcTemplate", jdbcTemplate);
+		pipeline = new MessageWritePipeline(jdbcTemplate, summaries);
+		ReflectionTestUtils.setField(pipeline, "durability", DurabilityMode.ENQUEUE);
+		ReflectionTestUtils.setField(pipeline, "batchSize", 256);
+		// Long enough that a write which waited for its batch could not return before it
+		ReflectionTestUtils.setField(pipeline, "maxDelayMs", 1000L);
+		ReflectionTestUtils.setField(pipeline, "queueCapacity", 1000);
+		ReflectionTestUtils.setField(pipeline, "enqueueTimeoutMs", 5000L);
+		pipeline.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		pipeline.stop();
+		dataSource.close();
+		postgres.close();
+	}
+
+	private Message message(String content) {
+		return Message.builder().sender("alice").receiver("bob").content(content).timestamp(LocalDateTime.now()).build();
+	}
+
+	@Test
+	void acknowledgesWithAnIdBeforeTheBatchIsCommitted() throws Exception {
+		Message first = message("one");
+		Message second = message("two");
+		pipeline.write(first);
+		pipeline.write(second);
+
+		assertNotNull(first.getId());
+		assertTrue(second.getId() > first.getId());
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM message", Integer.class));
+
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (jdbcTemplate.queryForObject("SELECT count(*) FROM message", Integer.class) < 2) {
+			assertTrue(System.currentTimeMillis() < deadline, "batch was not flushed");
+			Thread.sleep(10);
+		}
+		assertEquals(first.getId(), jdbcTemplate.queryForObject(
+				"SELECT id FROM message WHERE content = 'one'", Long.class));
+	}
+}
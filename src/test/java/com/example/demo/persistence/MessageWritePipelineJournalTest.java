@@ -0,0 +1,84 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.Message;
+import com.example.demo.service.ConversationSummaryService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageWritePipelineJournalTest {
+
+	@TempDir
+	Path dir;
+
+	private EmbeddedPostgres postgres;
+	private HikariDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private MessageWritePipeline pipeline;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		postgres = EmbeddedPostgres.builder().start();
+		dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		// The check stands in for any row the database refuses for good, such as one for a dropped month
+		jdbcTemplate.execute("CREATE TABLE message (id BIGINT PRIMARY KEY, sender VARCHAR(255), " +
+				"receiver VARCHAR(255), content TEXT CHECK (content <> 'refused'), timestamp TIMESTAMP, " +
+				"conversation_key VARCHAR(255))");
+		jdbcTemplate.execute("CREATE TABLE conversation_summaries (id BIGSERIAL PRIMARY KEY, owner VARCHAR(255), " +
+				"partner VARCHAR(255), last_message_id BIGINT, last_sender VARCHAR(255), last_content TEXT, " +
+				"last_timestamp TIMESTAMP, UNIQUE (owner, partner))");
+
+		ConversationSummaryService summaries = new ConversationSummaryService();
+		ReflectionTestUtils.setField(summaries, "jdbcTemplate", jdbcTemplate);
+		pipeline = new MessageWritePipeline(jdbcTemplate, summaries);
+		ReflectionTestUtils.setField(pipeline, "durability", DurabilityMode.JOURNAL);
+		ReflectionTestUtils.setField(pipeline, "batchSize", 16);
+		ReflectionTestUtils.setField(pipeline, "maxDelayMs", 1L);
+		ReflectionTestUtils.setField(pipeline, "queueCapacity", 1000);
+		ReflectionTestUtils.setField(pipeline, "journalDir", dir.toString());
+		ReflectionTestUtils.setField(pipeline, "journalSegmentSizeMb", 1);
+		pipeline.start();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		pipeline.stop();
+		dataSource.close();
+		postgres.close();
+	}
+
+	@Test
+	void movesRefusedRowsToTheDeadLetterJournalBeforeCheckpointingPastThem() throws Exception {
+		for (String content : List.of("one", "refused", "three")) {
+			pipeline.write(Message.builder().sender("alice").receiver("bob").content(content)
+					.timestamp(LocalDateTime.now()).build());
+		}
+
+		MessageJournal journal = (MessageJournal) ReflectionTestUtils.getField(pipeline, "journal");
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (journal.getCheckpoint() < journal.getWritePosition()) {
+			assertTrue(System.currentTimeMillis() < deadline, "journal was not replayed");
+			Thread.sleep(10);
+		}
+
+		assertEquals(List.of("one", "three"),
+				jdbcTemplate.queryForList("SELECT content FROM message ORDER BY id", String.class));
+		MessageJournal deadLetters = (MessageJournal) ReflectionTestUtils.getField(pipeline, "deadLetters");
+		List<MessageJournal.Entry> refused = deadLetters.readFrom(0, 10);
+		assertEquals(1, refused.size());
+		assertEquals("refused", refused.get(0).message.getContent());
+	}
+}
@@ -0,0 +1,120 @@
+package com.example.demo.persistence;
+
+import com.example.demo.entity.Message;
+import com.example.demo.service.ConversationSummaryService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two pipelines on one database stand in for two nodes. A reader that only ever asks for ids
+// above the highest it has seen, as history and sync cursors do, must still see every row
+class MessageWritePipelineOrderingTest {
+
+	private static final int WRITERS_PER_NODE = 4;
+	private static final int MESSAGES_PER_WRITER = 200;
+
+	private EmbeddedPostgres postgres;
+	private HikariDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private final List<MessageWritePipeline> nodes = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		postgres = EmbeddedPostgres.builder().start();
+		dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+		dataSource.setMaximumPoolSize(10);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE message (id BIGSERIAL PRIMARY KEY, sender VARCHAR(255), " +
+				"receiver VARCHAR(255), content TEXT, timestamp TIMESTAMP, conversation_key VARCHAR(255))");
+		jdbcTemplate.execute("CREATE TABLE conversation_summaries (id BIGSERIAL PRIMARY KEY, owner VARCHAR(255), " +
+				"partner VARCHAR(255), last_message_id BIGINT, last_sender VARCHAR(255), last_content TEXT, " +
+				"last_timestamp TIMESTAMP, UNIQUE (owner, partner))");
+
+		ConversationSummaryService summaries = new ConversationSummaryService();
+		ReflectionTestUtils.setField(summaries, "jdbcTemplate", jdbcTemplate);
+		for (int i = 0; i < 2; i++) {
+			MessageWritePipeline pipeline = new MessageWritePipeline(jdbcTemplate, summaries);
+			ReflectionTestUtils.setField(pipeline, "durability", DurabilityMode.FLUSH);
+			ReflectionTestUtils.setField(pipeline, "batchSize", 16);
+			ReflectionTestUtils.setField(pipeline, "maxDelayMs", 1L);
+			ReflectionTestUtils.setField(pipeline, "queueCapacity", 1000);
+			ReflectionTestUtils.setField(pipeline, "enqueueTimeoutMs", 5000L);
+			pipeline.start();
+			nodes.add(pipeline);
+		}
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		for (MessageWritePipeline pipeline : nodes) pipeline.stop();
+		dataSource.close();
+		postgres.close();
+	}
+
+	@Test
+	void readerFollowingTheHighestIdMissesNothing() throws Exception {
+		ExecutorService writers = Executors.newFixedThreadPool(2 * WRITERS_PER_NODE);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		Set<Long> seen = new HashSet<>();
+		try {
+			List<Future<?>> sends = new ArrayList<>();
+			for (MessageWritePipeline node : nodes) {
+				for (int w = 0; w < WRITERS_PER_NODE; w++) {
+					sends.add(writers.submit(() -> {
+						for (int i = 0; i < MESSAGES_PER_WRITER; i++) {
+							node.write(Message.builder().sender("alice").receiver("bob").content("m" + i)
+									.timestamp(LocalDateTime.now()).build());
+						}
+					}));
+				}
+			}
+			Future<?> done = writers.submit(() -> {
+				for (Future<?> send : sends) {
+					try {
+						send.get();
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+				writing.set(false);
+			});
+
+			long cursor = 0;
+			boolean last = false;
+			while (!last) {
+				last = !writing.get();
+				List<Long> page = jdbcTemplate.queryForList(
+						"SELECT id FROM message WHERE id > ? ORDER BY id LIMIT 50", Long.class, cursor);
+				seen.addAll(page);
+				if (!page.isEmpty()) {
+					cursor = page.get(page.size() - 1);
+					last = false;
+				}
+			}
+			done.get();
+		} finally {
+			writers.shutdownNow();
+		}
+
+		Set<Long> all = new HashSet<>(jdbcTemplate.queryForList("SELECT id FROM message", Long.class));
+		assertEquals(2 * WRITERS_PER_NODE * MESSAGES_PER_WRITER, all.size());
+		assertEquals(all, seen);
+	}
+}
@@ -0,0 +1,39 @@
+package com.example.demo.presence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class HashedTimingWheelTest {
+
+	@Test
+	void expiresEntriesOnlyOnTheirOwnLap() {
+		List<String> expired = new ArrayList<>();
+		HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 4, expired::add);
+		long now = System.currentTimeMillis();
+
+		wheel.schedule("soon", now + 500);
+		wheel.schedule("next-lap", now + 4500);
+
+		for (long tick = 1; tick <= 4; tick++) wheel.expire(tick);
+		assertEquals(List.of("soon"), expired);
+
+		wheel.expire(5);
+		assertEquals(List.of("soon", "next-lap"), expired);
+	}
+
+	@Test
+	void pastDeadlinesFireOnTheNextTick() {
+		List<String> expired = new ArrayList<>();
+		HashedTimingWheel<String> wheel = new HashedTimingWheel<>(1000, 8, expired::add);
+
+		wheel.schedule("late", System.currentTimeMillis() - 60_000);
+		wheel.expire(1);
+
+		assertTrue(expired.contains("late"));
+	}
+}
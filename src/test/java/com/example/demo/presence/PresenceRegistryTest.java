@@ -0,0 +1,109 @@
+package com.example.demo.presence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.demo.cache.FriendshipCache;
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.cache.LongHashSet;
+import com.example.demo.cache.UserIdCache;
+import com.example.demo.repository.UserRepository;
+
+class PresenceRegistryTest {
+
+	private final UserRepository userRepository = mock(UserRepository.class);
+	private final UserIdCache userIdCache = new UserIdCache(userRepository, 1000, 5000);
+	private final FriendshipCache friendshipCache = mock(FriendshipCache.class);
+	private final PresenceRegistry registry = new PresenceRegistry(mock(SimpMessagingTemplate.class), userIdCache,
+			friendshipCache, mock(GroupMembershipIndex.class));
+
+	@BeforeEach
+	void setUp() {
+		userIdCache.remember(1L, "alice");
+		userIdCache.remember(2L, "bob");
+		when(friendshipCache.friendsOf(anyLong())).thenReturn(LongHashSet.EMPTY);
+		when(friendshipCache.friendsOf(1L)).thenReturn(LongHashSet.of(2, 3));
+		ReflectionTestUtils.setField(registry, "idleTimeoutMs", 45_000L);
+		ReflectionTestUtils.invokeMethod(registry, "start");
+	}
+
+	@AfterEach
+	void tearDown() {
+		ReflectionTestUtils.invokeMethod(registry, "stop");
+	}
+
+	private void connect(String sessionId, String username) {
+		ReflectionTestUtils.invokeMethod(registry, "touch", sessionId, username);
+	}
+
+	private void disconnect(String sessionId) {
+		ReflectionTestUtils.invokeMethod(registry, "remove", sessionId);
+	}
+
+	@Test
+	void namesOnlineFriendsWithoutLookingThemUp() {
+		connect("s1", "alice");
+		connect("s2", "bob");
+
+		// Friend 3 is not online, so it is skipped without a lookup
+		assertEquals(List.of("bob"), registry.onlineFriends("alice"));
+		verify(userRepository, never()).findIdByUsername(anyString());
+	}
+
+	@Test
+	void dropsTheFriendSetOnceTheLastSessionLeaves() {
+		connect("s1", "alice");
+		connect("s2", "alice");
+
+		disconnect("s1");
+		verify(friendshipCache, never()).invalidate(1L);
+		disconnect("s2");
+		verify(friendshipCache).invalidate(1L);
+		assertEquals(List.of(), registry.onlineFriends("bob"));
+	}
+
+	@Test
+	void aDisconnectRacingTheFirstFrameNeverLeavesTheUserOnline() throws Exception {
+		CyclicBarrier start = new CyclicBarrier(2);
+		for (int i = 0; i < 2_000; i++) {
+			String sessionId = "s" + i;
+			Thread toucher = new Thread(() -> {
+				await(start);
+				connect(sessionId, "alice");
+			});
+			toucher.start();
+			await(start);
+			// Keep disconnecting while the first frame is being handled, then once more after it
+			do {
+				disconnect(sessionId);
+			} while (toucher.isAlive());
+			disconnect(sessionId);
+			toucher.join();
+
+			assertFalse(registry.isOnline("alice"), "alice stayed online after session " + sessionId + " left");
+		}
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.User;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupMessagePublisherTest {
+
+	@Test
+	void sendsOnlyWireFieldsToTheGroupTopic() {
+		List<Message<?>> sent = new ArrayList<>();
+		ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+		channel.subscribe(sent::add);
+		GroupMessagePublisher publisher = new GroupMessagePublisher(
+				new SimpMessagingTemplate(channel),
+				// As Spring Boot configures the application ObjectMapper
+				Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build());
+
+		User owner = new User();
+		owner.setId(1L);
+		owner.setUsername("alice");
+		ChatGroup group = new ChatGroup();
+		group.setId(42L);
+		group.setOwner(owner);
+		group.setMembers(Set.of(owner));
+
+		GroupMessage message = new GroupMessage();
+		message.setId(7L);
+		message.setGroup(group);
+		message.setSender("alice");
+		message.setContent("hi");
+		message.setTimestamp(LocalDateTime.of(2025, 4, 12, 18, 30));
+
+		publisher.publish(message);
+
+		assertEquals(1, sent.size());
+		assertEquals("/topic/group/42", SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders()));
+		assertEquals("{\"id\":7,\"groupId\":42,\"sender\":\"alice\",\"content\":\"hi\",\"timestamp\":\"2025-04-12T18:30:00\"}",
+				new String((byte[]) sent.get(0).getPayload(), StandardCharsets.UTF_8));
+	}
+}
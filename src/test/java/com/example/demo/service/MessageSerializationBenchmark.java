@@ -0,0 +1,70 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.GroupMessageWireDTO;
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// JSON encoding of what the send paths publish, with the ObjectMapper settings Spring Boot
+// applies: a DM, a group message as the entity, and as the wire DTO GroupMessagePublisher sends
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    private ObjectMapper mapper;
+    private ObjectWriter wireWriter;
+    private Message message;
+    private GroupMessage groupMessage;
+
+    @Setup
+    public void setUp() {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        wireWriter = mapper.writerFor(GroupMessageWireDTO.class);
+        LocalDateTime timestamp = LocalDateTime.of(2025, 4, 12, 18, 30, 15);
+
+        message = Message.builder()
+                .id(1_234_567L)
+                .sender("alice_w")
+                .receiver("bob_the_builder")
+                .content("On my way, be there in ten minutes. Grab a table by the window if you can?")
+                .timestamp(timestamp)
+                .build();
+
+        ChatGroup group = new ChatGroup();
+        group.setId(42L);
+        group.setName("Weekend hikers");
+        groupMessage = new GroupMessage();
+        groupMessage.setId(7_654_321L);
+        groupMessage.setSender("alice_w");
+        groupMessage.setContent("Trailhead at 8, bring water and something warm for the summit.");
+        groupMessage.setTimestamp(timestamp);
+        groupMessage.setGroup(group);
+    }
+
+    @Benchmark
+    public byte[] message() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] groupMessageEntity() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(groupMessage);
+    }
+
+    @Benchmark
+    public byte[] groupMessageWire() throws JsonProcessingException {
+        return wireWriter.writeValueAsBytes(GroupMessageWireDTO.from(groupMessage));
+    }
+}
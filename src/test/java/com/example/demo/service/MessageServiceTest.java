@@ -0,0 +1,85 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.CursorPage;
+import com.example.demo.entity.Message;
+import com.example.demo.persistence.MessageArchive;
+import com.example.demo.repository.MessageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MessageServiceTest {
+
+	private final MessageRepository messageRepository = mock(MessageRepository.class);
+	private final MessageService service = new MessageService();
+	// Ids 1..5 in the alice/bob conversation
+	private final List<Message> rows = LongStream.rangeClosed(1, 5)
+			.mapToObj(id -> Message.builder().id(id).sender("alice").receiver("bob").build())
+			.toList();
+
+	MessageServiceTest() {
+		ReflectionTestUtils.setField(service, "messageRepository", messageRepository);
+		ReflectionTestUtils.setField(service, "messageArchive", mock(MessageArchive.class));
+		when(messageRepository.findByConversationKeyAndIdLessThanOrderByIdDesc(anyString(), anyLong(), any()))
+				.thenAnswer(call -> rows.stream()
+						.filter(m -> m.getId() < call.<Long>getArgument(1))
+						.sorted(Comparator.comparing(Message::getId).reversed())
+						.limit(call.<Limit>getArgument(2).max())
+						.toList());
+		when(messageRepository.findByConversationKeyAndIdGreaterThanOrderByIdAsc(anyString(), anyLong(), any()))
+				.thenAnswer(call -> rows.stream()
+						.filter(m -> m.getId() > call.<Long>getArgument(1))
+						.limit(call.<Limit>getArgument(2).max())
+						.toList());
+	}
+
+	private static List<Long> ids(CursorPage<Message> page) {
+		return page.getMessages().stream().map(Message::getId).toList();
+	}
+
+	@Test
+	void pagesBackwardWithBefore() {
+		CursorPage<Message> newest = service.getChatHistory("alice", "bob", null, null, 2);
+		assertEquals(List.of(4L, 5L), ids(newest));
+		assertTrue(newest.isHasMore());
+		assertEquals(4L, newest.getNextCursor());
+
+		CursorPage<Message> older = service.getChatHistory("alice", "bob", 4L, null, 2);
+		assertEquals(List.of(2L, 3L), ids(older));
+
+		CursorPage<Message> oldest = service.getChatHistory("alice", "bob", 2L, null, 2);
+		assertEquals(List.of(1L), ids(oldest));
+		assertFalse(oldest.isHasMore());
+		assertNull(oldest.getNextCursor());
+	}
+
+	@Test
+	void pagesForwardWithAfter() {
+		CursorPage<Message> first = service.getChatHistory("alice", "bob", null, 1L, 2);
+		assertEquals(List.of(2L, 3L), ids(first));
+		assertTrue(first.isHasMore());
+		assertEquals(3L, first.getNextCursor());
+
+		CursorPage<Message> last = service.getChatHistory("alice", "bob", null, 3L, 2);
+		assertEquals(List.of(4L, 5L), ids(last));
+		assertFalse(last.isHasMore());
+		assertNull(last.getNextCursor());
+
+		CursorPage<Message> empty = service.getChatHistory("alice", "bob", null, 5L, 2);
+		assertTrue(empty.getMessages().isEmpty());
+		assertNull(empty.getNextCursor());
+	}
+
+	@Test
+	void rejectsBothCursors() {
+		assertThrows(RuntimeException.class, () -> service.getChatHistory("alice", "bob", 3L, 1L, 2));
+	}
+}
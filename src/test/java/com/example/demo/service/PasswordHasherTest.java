@@ -0,0 +1,78 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+	private static PasswordEncoder bcrypt(int strength) {
+		DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt",
+				Map.of("bcrypt", new BCryptPasswordEncoder(strength)));
+		encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder(strength));
+		return encoder;
+	}
+
+	@Test
+	void rejectsWorkBeyondTheQueue() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		PasswordEncoder blocking = new BCryptPasswordEncoder(4) {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.encode(rawPassword);
+			}
+		};
+		PasswordHasher hasher = new PasswordHasher(blocking, new SimpleMeterRegistry(), 1, 1, 60_000, false);
+		try {
+			CompletableFuture<String> running = hasher.encode("password1");
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			CompletableFuture<String> queued = hasher.encode("password2");
+			CompletableFuture<String> refused = hasher.encode("password3");
+
+			CompletionException e = assertThrows(CompletionException.class, refused::join);
+			assertInstanceOf(PasswordHashingRejectedException.class, e.getCause());
+
+			release.countDown();
+			assertNotNull(running.get(5, TimeUnit.SECONDS));
+			assertNotNull(queued.get(5, TimeUnit.SECONDS));
+		} finally {
+			hasher.destroy();
+		}
+	}
+
+	@Test
+	void upgradesWeakerHashesOnlyWhenEnabled() throws Exception {
+		String legacy = new BCryptPasswordEncoder(4).encode("password1");
+		PasswordHasher off = new PasswordHasher(bcrypt(5), new SimpleMeterRegistry(), 1, 4, 60_000, false);
+		PasswordHasher on = new PasswordHasher(bcrypt(5), new SimpleMeterRegistry(), 1, 4, 60_000, true);
+		try {
+			assertNull(off.verify("password1", legacy).get(5, TimeUnit.SECONDS).upgradedHash());
+			assertFalse(on.verify("wrong1", legacy).get(5, TimeUnit.SECONDS).matches());
+
+			PasswordHasher.Verification upgraded = on.verify("password1", legacy).get(5, TimeUnit.SECONDS);
+			assertTrue(upgraded.matches());
+			assertTrue(upgraded.upgradedHash().startsWith("{bcrypt}$2a$05$"));
+			assertNull(on.verify("password1", upgraded.upgradedHash()).get(5, TimeUnit.SECONDS).upgradedHash());
+		} finally {
+			off.destroy();
+			on.destroy();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.ConversationSummary;
+import com.example.demo.entity.Message;
+import com.example.demo.repository.ConversationSummaryRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The recent chats reduction: the original pass over a user's whole DM history (latest message
+// per partner, then sorted) against ConversationSummaryService mapping the per-partner summary
+// rows it reads instead. The repository is stubbed, so neither side includes the query itself
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecentChatsBenchmark {
+
+    private static final String USER = "alice_w";
+
+    @Param({"1000", "20000"})
+    public int messages;
+
+    @Param({"50"})
+    public int partners;
+
+    private List<Message> history;
+    private ConversationSummaryService summaryService;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        history = new ArrayList<>(messages);
+        Map<String, ConversationSummary> summaries = new HashMap<>();
+        for (int i = 0; i < messages; i++) {
+            String partner = "friend_" + (i * 31 % partners);
+            boolean outgoing = i % 2 == 0;
+            Message m = Message.builder()
+                    .id((long) i + 1)
+                    .sender(outgoing ? USER : partner)
+                    .receiver(outgoing ? partner : USER)
+                    .content("message " + i)
+                    .timestamp(start.plusSeconds(i))
+                    .build();
+            history.add(m);
+
+            ConversationSummary summary = summaries.computeIfAbsent(partner, p -> new ConversationSummary());
+            summary.setOwner(USER);
+            summary.setPartner(partner);
+            summary.setLastMessageId(m.getId());
+            summary.setLastSender(m.getSender());
+            summary.setLastContent(m.getContent());
+            summary.setLastTimestamp(m.getTimestamp());
+        }
+
+        List<ConversationSummary> newestFirst = new ArrayList<>(summaries.values());
+        newestFirst.sort(Comparator.comparing(ConversationSummary::getLastMessageId).reversed());
+        ConversationSummaryRepository repository = (ConversationSummaryRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{ConversationSummaryRepository.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("findByOwnerOrderByLastMessageIdDesc")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    int max = ((Limit) args[1]).max();
+                    return newestFirst.subList(0, Math.min(max, newestFirst.size()));
+                });
+        summaryService = new ConversationSummaryService();
+        ReflectionTestUtils.setField(summaryService, "conversationSummaryRepository", repository);
+    }
+
+    @Benchmark
+    public List<Message> historyReduction() {
+        Map<String, Message> latest = new HashMap<>();
+        for (Message m : history) {
+            String partner = m.getSender().equals(USER) ? m.getReceiver() : m.getSender();
+            latest.merge(partner, m, (a, b) -> a.getTimestamp().isAfter(b.getTimestamp()) ? a : b);
+        }
+        List<Message> recent = new ArrayList<>(latest.values());
+        recent.sort(Comparator.comparing(Message::getTimestamp).reversed());
+        return recent;
+    }
+
+    @Benchmark
+    public List<Message> summaryRows() {
+        return summaryService.getRecentChats(USER, ConversationSummaryService.DEFAULT_RECENT_LIMIT);
+    }
+}
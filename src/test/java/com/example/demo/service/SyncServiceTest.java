@@ -0,0 +1,127 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.SyncRequest;
+import com.example.demo.entity.ConversationSummary;
+import com.example.demo.entity.Message;
+import com.example.demo.persistence.MessageArchive;
+import com.example.demo.repository.ConversationSummaryRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SyncServiceTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+	private final MessageService messageService = mock(MessageService.class);
+	private final ConversationSummaryRepository summaries = mock(ConversationSummaryRepository.class);
+	private final SyncService service = new SyncService();
+	// Newest message id per partner
+	private final Map<String, Long> latest = new LinkedHashMap<>();
+
+	SyncServiceTest() {
+		ReflectionTestUtils.setField(service, "messageService", messageService);
+		ReflectionTestUtils.setField(service, "messageArchive", mock(MessageArchive.class));
+		ReflectionTestUtils.setField(service, "conversationSummaryRepository", summaries);
+		ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+		when(summaries.findByOwnerAndPartnerIn(eq("alice"), any())).thenAnswer(call -> call.<Collection<String>>getArgument(1)
+				.stream().filter(latest::containsKey).map(partner -> summary(partner, latest.get(partner))).toList());
+		when(summaries.findByOwnerAndLastMessageIdGreaterThanOrderByLastMessageIdAsc(eq("alice"), anyLong(), any()))
+				.thenAnswer(call -> latest.entrySet().stream()
+						.filter(e -> e.getValue() > call.<Long>getArgument(1))
+						.sorted(Map.Entry.comparingByValue())
+						.limit(call.<Limit>getArgument(2).max())
+						.map(e -> summary(e.getKey(), e.getValue()))
+						.toList());
+		// Every conversation holds ids 1..its latest
+		when(messageService.messagesAfter(anyString(), anyLong(), anyInt())).thenAnswer(call -> {
+			String partner = call.<String>getArgument(0).split(":")[2];
+			return LongStream.rangeClosed(call.<Long>getArgument(1) + 1, latest.getOrDefault(partner, 0L))
+					.limit(call.<Integer>getArgument(2))
+					.mapToObj(id -> Message.builder().id(id).sender(partner).receiver("alice").build())
+					.toList();
+		});
+	}
+
+	private static ConversationSummary summary(String partner, long lastMessageId) {
+		ConversationSummary summary = new ConversationSummary();
+		summary.setOwner("alice");
+		summary.setPartner(partner);
+		summary.setLastMessageId(lastMessageId);
+		return summary;
+	}
+
+	private JsonNode sync(SyncRequest request) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		service.writeSync("alice", request, out);
+		return objectMapper.readTree(out.toByteArray());
+	}
+
+	@Test
+	void skipsConversationsWithNothingPastTheMark() throws Exception {
+		latest.put("bob", 5L);
+		latest.put("carol", 9L);
+		SyncRequest request = new SyncRequest();
+		request.setConversations(Map.of("bob", 5L, "carol", 7L));
+
+		JsonNode response = sync(request);
+
+		verify(messageService, times(1)).messagesAfter(anyString(), anyLong(), anyInt());
+		assertEquals(2, response.get("conversations").size());
+		for (JsonNode conversation : response.get("conversations")) {
+			int expected = conversation.get("with").asText().equals("carol") ? 2 : 0;
+			assertEquals(expected, conversation.get("messages").size());
+		}
+	}
+
+	@Test
+	void stopsReadingOnceTheReadBudgetIsSpentAndKeepsTheCursors() throws Exception {
+		Map<String, Long> marks = new LinkedHashMap<>();
+		IntStream.range(0, SyncService.MAX_READS + 10).forEach(i -> {
+			latest.put("friend" + i, 3L);
+			marks.put("friend" + i, 0L);
+		});
+		SyncRequest request = new SyncRequest();
+		request.setConversations(marks);
+		request.setLimit(1);
+
+		JsonNode conversations = sync(request).get("conversations");
+
+		verify(messageService, times(SyncService.MAX_READS)).messagesAfter(anyString(), anyLong(), anyInt());
+		JsonNode last = conversations.get(conversations.size() - 1);
+		assertEquals(0, last.get("messages").size());
+		assertEquals(0, last.get("nextCursor").asLong());
+		assertTrue(last.get("hasMore").asBoolean());
+	}
+
+	@Test
+	void countsDiscoveredConversationsAgainstTheEntryLimit() throws Exception {
+		Map<String, Long> marks = new LinkedHashMap<>();
+		for (int i = 0; i < SyncService.MAX_ENTRIES - 2; i++) marks.put("listed" + i, 0L);
+		for (long id = 11; id <= 15; id++) latest.put("new" + id, id);
+		SyncRequest request = new SyncRequest();
+		request.setConversations(marks);
+		request.setSince(10L);
+
+		JsonNode response = sync(request);
+
+		assertEquals(SyncService.MAX_ENTRIES, response.get("conversations").size());
+		List<String> discovered = response.get("conversations").findValuesAsText("with").stream()
+				.filter(with -> with.startsWith("new")).toList();
+		assertEquals(List.of("new11", "new12"), discovered);
+		assertEquals(12, response.get("nextSince").asLong());
+	}
+}
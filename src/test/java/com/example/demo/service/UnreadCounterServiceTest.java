@@ -0,0 +1,155 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.GroupMembershipIndex;
+import com.example.demo.cache.LongHashSet;
+import com.example.demo.cache.UserIdCache;
+import com.example.demo.dto.UnreadCountDTO;
+import com.example.demo.entity.ChatGroup;
+import com.example.demo.entity.GroupMessage;
+import com.example.demo.entity.Message;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UnreadCounterServiceTest {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final UserIdCache userIdCache = mock(UserIdCache.class);
+	private final GroupMembershipIndex groupMembershipIndex = mock(GroupMembershipIndex.class);
+	private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+	private final TransactionStatus transaction = mock(TransactionStatus.class);
+	private final UnreadCounterService service =
+			new UnreadCounterService(jdbcTemplate, userIdCache, groupMembershipIndex, transactionManager);
+
+	UnreadCounterServiceTest() {
+		when(userIdCache.userId("alice")).thenReturn(1L);
+		when(userIdCache.userId("bob")).thenReturn(2L);
+		when(groupMembershipIndex.members(9L)).thenReturn(LongHashSet.of(1, 2));
+		when(groupMembershipIndex.isMember(9L, "bob")).thenReturn(true);
+		when(transactionManager.getTransaction(any())).thenReturn(transaction);
+	}
+
+	private void dm(long id, String from, String to) {
+		service.messageSent(Message.builder().id(id).sender(from).receiver(to).build());
+	}
+
+	private void group(long id, String from) {
+		ChatGroup chatGroup = new ChatGroup();
+		chatGroup.setId(9L);
+		GroupMessage message = new GroupMessage();
+		message.setId(id);
+		message.setSender(from);
+		message.setGroup(chatGroup);
+		service.groupMessageSent(message);
+	}
+
+	private static long unread(List<UnreadCountDTO> counts, String kind, String ref) {
+		return counts.stream()
+				.filter(c -> c.getKind().equals(kind) && c.getRef().equals(ref))
+				.findFirst().orElseThrow().getUnread();
+	}
+
+	@Test
+	void countsPendingMessagesForReceiversOnly() {
+		dm(1, "alice", "bob");
+		dm(2, "alice", "bob");
+		group(3, "alice");
+
+		List<UnreadCountDTO> bob = service.getUnreadCounts("bob");
+		assertEquals(2, bob.size());
+		assertEquals(2, unread(bob, "dm", "alice"));
+		assertEquals(1, unread(bob, "group", "9"));
+		assertTrue(service.getUnreadCounts("alice").isEmpty());
+		verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+	}
+
+	@Test
+	void markReadResetsAndCountsOnlyLaterMessages() {
+		dm(1, "alice", "bob");
+		service.markRead("bob", "dm", "alice", 1);
+		dm(2, "alice", "bob");
+
+		List<UnreadCountDTO> bob = service.getUnreadCounts("bob");
+		assertEquals(1, bob.size());
+		assertEquals(1, bob.get(0).getUnread());
+		assertEquals(1, bob.get(0).getLastReadId());
+	}
+
+	@Test
+	void rejectsGroupRefsThatAreNotTheReadersGroups() {
+		assertThrows(RuntimeException.class, () -> service.markRead("bob", "group", "nine", 1));
+		assertThrows(RuntimeException.class, () -> service.markRead("bob", "group", "10", 1));
+
+		service.markRead("bob", "group", "09", 1);
+		service.flush();
+		verify(jdbcTemplate).batchUpdate(startsWith("UPDATE unread_counters"),
+				argThat((List<Object[]> rows) -> rows.size() == 1 && rows.get(0)[0].equals(9L) && rows.get(0)[3].equals("9")));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object[] upsertedDm(int flushes) {
+		ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate, times(flushes)).batchUpdate(startsWith("INSERT INTO unread_counters"), rows.capture());
+		return rows.getValue().stream().filter(row -> row[1].equals("dm")).findFirst().orElseThrow();
+	}
+
+	@Test
+	void retriesChangesOnlyWhenTheFlushRolledBack() {
+		dm(1, "alice", "bob");
+		dm(2, "alice", "bob");
+		service.markRead("bob", "group", "9", 1);
+		when(jdbcTemplate.batchUpdate(startsWith("UPDATE unread_counters"), anyList()))
+				.thenThrow(new RuntimeException("recount failed"))
+				.thenReturn(new int[] {1});
+
+		assertThrows(RuntimeException.class, service::flush);
+		verify(transactionManager).rollback(transaction);
+		verify(transactionManager, never()).commit(any());
+
+		dm(3, "alice", "bob");
+		service.flush();
+		// The rolled back increments are written once, together with the new one
+		assertEquals(3L, upsertedDm(2)[3]);
+		verify(transactionManager).commit(transaction);
+	}
+
+	@Test
+	void dropsChangesWhoseCommitFailed() {
+		dm(1, "alice", "bob");
+		doThrow(new TransactionSystemException("connection lost")).when(transactionManager).commit(transaction);
+
+		assertThrows(TransactionSystemException.class, service::flush);
+		service.flush();
+
+		assertEquals(1L, upsertedDm(1)[3]);
+		verify(transactionManager, never()).rollback(any());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void flushWritesOneRowPerCounter() {
+		for (long id = 1; id <= 5; id++) dm(id, "alice", "bob");
+		group(6, "bob");
+
+		service.flush();
+
+		ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO unread_counters"), rows.capture());
+		assertEquals(2, rows.getValue().size());
+		Object[] dm = rows.getValue().stream().filter(row -> row[1].equals("dm")).findFirst().orElseThrow();
+		assertArrayEquals(new Object[] {2L, "dm", "alice", 5L, 5L, 0L, false}, dm);
+
+		service.flush();
+		verifyNoMoreInteractions(jdbcTemplate);
+	}
+}